@@ -38,6 +38,7 @@ android {
         }
     }
     dependencies {
+        implementation(project(":stego-core"))
         implementation("org.lz4:lz4-java:1.8.0")
     }
 }
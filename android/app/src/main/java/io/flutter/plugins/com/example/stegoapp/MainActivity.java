@@ -3,24 +3,52 @@ package com.example.stegoapp;
 import androidx.annotation.NonNull;
 import io.flutter.embedding.android.FlutterActivity;
 import io.flutter.embedding.engine.FlutterEngine;
+import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodCall;
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import com.example.stegoapp.steganography.HideOptions;
+import com.example.stegoapp.steganography.LsbLayout;
+import com.example.stegoapp.steganography.PayloadCodec;
+import com.example.stegoapp.steganography.ProgressListener;
+import com.example.stegoapp.steganography.Tracer;
+import com.example.stegoapp.steganography.VerificationLevel;
+
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class MainActivity extends FlutterActivity {
     private static final String CHANNEL = "com.example.stegoapp/UltraFastSteganography";
+    private static final String JOB_EVENTS_CHANNEL = "com.example.stegoapp/UltraFastSteganography/jobs";
     private UltraFastSteganography steganographyManager;
+    private StegoJobDispatcher jobDispatcher;
+    // Video capacity probes scan a sample table; they get their own thread so
+    // they never wait behind the hide and extract jobs they are meant to gate.
+    private final ThreadPoolExecutor probeExecutor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(16), r -> new Thread(r, "stego-capacity-probe"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     @Override
     public void configureFlutterEngine(@NonNull FlutterEngine flutterEngine) {
         super.configureFlutterEngine(flutterEngine);
         
         steganographyManager = new UltraFastSteganography(getContext());
+        jobDispatcher = new StegoJobDispatcher();
+        
+        new EventChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), JOB_EVENTS_CHANNEL)
+            .setStreamHandler(jobDispatcher);
         
         new MethodChannel(flutterEngine.getDartExecutor().getBinaryMessenger(), CHANNEL)
             .setMethodCallHandler(
@@ -33,22 +61,52 @@ public class MainActivity extends FlutterActivity {
     private void handleMethodCall(MethodCall call, MethodChannel.Result result) {
         switch (call.method) {
             case "hideTextInImage":
-                handleHideTextInImage(call, result);
+                dispatch(call, result, listener -> handleHideTextInImage(call, listener));
                 break;
             case "extractTextFromImage":
-                handleExtractTextFromImage(call, result);
+                dispatch(call, result, listener -> handleExtractTextFromImage(call, listener));
+                break;
+            case "hideTextInImages":
+                dispatch(call, result, listener -> handleHideTextInImages(call, listener));
+                break;
+            case "extractTextFromImages":
+                dispatch(call, result, listener -> handleExtractTextFromImages(call, listener));
                 break;
             case "hideImageInImage":
-                handleHideImageInImage(call, result);
+                dispatch(call, result, listener -> handleHideImageInImage(call, listener));
                 break;
             case "extractImageFromImage":
-                handleExtractImageFromImage(call, result);
+                dispatch(call, result, listener -> handleExtractImageFromImage(call, listener));
                 break;
             case "hideImageInVideo":
-                handleHideImageInVideo(call, result);
+                dispatch(call, result, listener -> handleHideImageInVideo(call, listener));
                 break;
             case "extractImageFromVideo":
-                handleExtractImageFromVideo(call, result);
+                dispatch(call, result, listener -> handleExtractImageFromVideo(call, listener));
+                break;
+            case "getCapacity":
+                handleGetCapacity(call, result);
+                break;
+            case "cancelJob":
+                handleCancelJob(call, result);
+                break;
+            case "getMetrics":
+                handleGetMetrics(result);
+                break;
+            case "configureGranularity":
+                handleConfigureGranularity(call, result);
+                break;
+            case "configurePixelCache":
+                handleConfigurePixelCache(call, result);
+                break;
+            case "configurePixelPool":
+                handleConfigurePixelPool(call, result);
+                break;
+            case "setTracing":
+                handleSetTracing(call, result);
+                break;
+            case "exportTrace":
+                handleExportTrace(result);
                 break;
             default:
                 result.notImplemented();
@@ -56,8 +114,244 @@ public class MainActivity extends FlutterActivity {
         }
     }
     
+    // ============== JOB DISPATCH ==============
+    // Every stego call runs on the dispatcher. With "async": true the job id is
+    // returned immediately and the result arrives on the jobs EventChannel;
+    // otherwise the MethodChannel result is completed when the job finishes.
+    private void dispatch(MethodCall call, MethodChannel.Result result, StegoJobDispatcher.Task task) {
+        boolean async = Boolean.TRUE.equals(call.argument("async"));
+        try {
+            String jobId = jobDispatcher.submit(call.method, task, response -> {
+                if (!async) {
+                    result.success(response);
+                }
+            });
+            if (async) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", true);
+                response.put("jobId", jobId);
+                result.success(response);
+            }
+        } catch (RejectedExecutionException e) {
+            Log.w("UltraFastSteganography", "Job queue full, rejecting " + call.method);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("error", "Too many pending jobs");
+            result.success(response);
+        }
+    }
+    
+    private void handleCancelJob(MethodCall call, MethodChannel.Result result) {
+        String jobId = call.argument("jobId");
+        Map<String, Object> response = new HashMap<>();
+        if (jobId == null) {
+            response.put("success", false);
+            response.put("error", "Missing required parameters");
+        } else {
+            response.put("success", jobDispatcher.cancel(jobId));
+        }
+        result.success(response);
+    }
+    
+    // ============== CAPACITY PROBE ==============
+    /**
+     * Answers outside the job dispatcher: an image probe is a bounds-only
+     * header read done right here, a video probe runs on the probe thread.
+     */
+    private void handleGetCapacity(MethodCall call, MethodChannel.Result result) {
+        String carrierUri = call.argument("carrierUri");
+        if (carrierUri == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("error", "Missing required parameters");
+            result.success(response);
+            return;
+        }
+        String type;
+        try {
+            type = steganographyManager.resolveCarrierType(carrierUri, call.argument("type"));
+        } catch (Exception e) {
+            result.success(capacityError(e));
+            return;
+        }
+        if (!"video".equals(type)) {
+            result.success(probeCapacity(call, carrierUri, type));
+            return;
+        }
+        try {
+            probeExecutor.execute(() -> {
+                Map<String, Object> response = probeCapacity(call, carrierUri, type);
+                mainHandler.post(() -> result.success(response));
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w("UltraFastSteganography", "Capacity probe queue full, rejecting " + carrierUri);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("error", "Too many pending capacity probes");
+            result.success(response);
+        }
+    }
+
+    private Map<String, Object> probeCapacity(MethodCall call, String carrierUri, String type) {
+        try {
+            LsbLayout layout = parseHideOptions(call).getLayout();
+            Map<String, Object> response = new HashMap<>(
+                    steganographyManager.getCapacity(carrierUri, type, layout, ProgressListener.NONE));
+            response.put("success", true);
+            return response;
+        } catch (Exception e) {
+            return capacityError(e);
+        }
+    }
+
+    private static Map<String, Object> capacityError(Exception e) {
+        Log.e("UltraFastSteganography", "Error probing carrier capacity", e);
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("error", e.getMessage());
+        return response;
+    }
+    
+    // ============== TUNING AND METRICS ==============
+    private void handleGetMetrics(MethodChannel.Result result) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("metrics", steganographyManager.getMetrics());
+        result.success(response);
+    }
+    
+    private void handleConfigureGranularity(MethodCall call, MethodChannel.Result result) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Integer inlineMaxBytes = call.argument("inlineMaxBytes");
+            Integer chunkBytes = call.argument("chunkBytes");
+            if (inlineMaxBytes == null || chunkBytes == null) {
+                response.put("success", false);
+                response.put("error", "Missing required parameters");
+            } else {
+                steganographyManager.configureGranularity(inlineMaxBytes, chunkBytes);
+                response.put("success", true);
+            }
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+        }
+        result.success(response);
+    }
+    
+    private void handleConfigurePixelCache(MethodCall call, MethodChannel.Result result) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Number maxBytes = call.argument("maxBytes");
+            if (maxBytes == null) {
+                response.put("success", false);
+                response.put("error", "Missing required parameters");
+            } else {
+                steganographyManager.configurePixelCache(maxBytes.longValue());
+                response.put("success", true);
+            }
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+        }
+        result.success(response);
+    }
+    
+    private void handleConfigurePixelPool(MethodCall call, MethodChannel.Result result) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Number maxIdleBytes = call.argument("maxIdleBytes");
+            if (maxIdleBytes == null) {
+                response.put("success", false);
+                response.put("error", "Missing required parameters");
+            } else {
+                steganographyManager.configurePixelPool(maxIdleBytes.longValue());
+                Number maxTotalBytes = call.argument("maxTotalBytes");
+                if (maxTotalBytes != null) {
+                    steganographyManager.configurePixelPoolBudget(maxTotalBytes.longValue());
+                }
+                response.put("success", true);
+            }
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+        }
+        result.success(response);
+    }
+    
+    private void handleSetTracing(MethodCall call, MethodChannel.Result result) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            Boolean enabled = call.argument("enabled");
+            Integer capacity = call.argument("capacity");
+            if (enabled == null) {
+                response.put("success", false);
+                response.put("error", "Missing required parameters");
+            } else {
+                steganographyManager.setTracing(enabled, capacity != null ? capacity : Tracer.DEFAULT_CAPACITY);
+                response.put("success", true);
+            }
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+        }
+        result.success(response);
+    }
+    
+    // Writes the buffered spans to a JSON file for chrome://tracing or Perfetto.
+    private void handleExportTrace(MethodChannel.Result result) {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("path", steganographyManager.exportTrace());
+            response.put("spans", Tracer.size());
+            response.put("success", true);
+        } catch (IOException e) {
+            response.put("success", false);
+            response.put("error", e.getMessage());
+        }
+        result.success(response);
+    }
+    
+    // Optional per-call tuning shared by the hide methods.
+    private HideOptions parseHideOptions(MethodCall call) {
+        HideOptions options = HideOptions.defaults();
+        Integer pngLevel = call.argument("pngLevel");
+        if (pngLevel != null) {
+            options.setPngLevel(pngLevel);
+        }
+        String verification = call.argument("verification");
+        if (verification != null) {
+            options.setVerification(VerificationLevel.fromName(verification));
+        }
+        String compression = call.argument("compression");
+        if (compression != null && !"auto".equals(compression)) {
+            options.setCompression(PayloadCodec.Choice.parse(compression));
+        }
+        Number compressionBudgetMs = call.argument("compressionBudgetMs");
+        if (compressionBudgetMs != null) {
+            options.setCompressionBudgetMs(compressionBudgetMs.longValue());
+        }
+        Boolean interleavedRemux = call.argument("interleavedRemux");
+        if (interleavedRemux != null) {
+            options.setInterleavedRemux(interleavedRemux);
+        }
+        Boolean inPlace = call.argument("inPlace");
+        if (inPlace != null) {
+            options.setInPlace(inPlace);
+        }
+        Integer lsbDepth = call.argument("lsbDepth");
+        if (lsbDepth != null) {
+            options.setLsbDepth(lsbDepth);
+        }
+        Boolean useAlpha = call.argument("useAlpha");
+        if (useAlpha != null) {
+            options.setAlphaChannel(useAlpha);
+        }
+        return options;
+    }
+    
     // ============== EXISTING TEXT METHODS (UNCHANGED) ==============
-    private void handleHideTextInImage(MethodCall call, MethodChannel.Result result) {
+    private Map<String, Object> handleHideTextInImage(MethodCall call, ProgressListener listener) {
         try {
             String text = call.argument("text");
             String carrierUri = call.argument("carrierUri");
@@ -66,33 +360,34 @@ public class MainActivity extends FlutterActivity {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", false);
                 response.put("error", "Missing required parameters");
-                result.success(response);
-                return;
+                return response;
             }
             
-            String outputPath = steganographyManager.hideTextInImage(text, carrierUri);
+            HideOptions options = parseHideOptions(call);
+            String outputPath = steganographyManager.hideTextInImage(text, carrierUri, options, listener);
             
             if (outputPath.startsWith("Error:")) {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", false);
                 response.put("error", outputPath.substring(7));
-                result.success(response);
+                return response;
             } else {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", true);
                 response.put("path", outputPath);
-                result.success(response);
+                response.put("verification", options.getVerification().getName());
+                return response;
             }
         } catch (Exception e) {
             Log.e("UltraFastSteganography", "Error hiding text in image", e);
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
             response.put("error", e.getMessage());
-            result.success(response);
+            return response;
         }
     }
     
-    private void handleExtractTextFromImage(MethodCall call, MethodChannel.Result result) {
+    private Map<String, Object> handleExtractTextFromImage(MethodCall call, ProgressListener listener) {
         try {
             String carrierUri = call.argument("carrierUri");
             
@@ -100,34 +395,113 @@ public class MainActivity extends FlutterActivity {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", false);
                 response.put("error", "Missing required parameters");
-                result.success(response);
-                return;
+                return response;
             }
             
-            String extractedText = steganographyManager.extractTextFromImage(carrierUri);
+            String extractedText = steganographyManager.extractTextFromImage(carrierUri, listener);
             
             if (extractedText.startsWith("Error:")) {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", false);
                 response.put("error", extractedText.substring(7));
-                result.success(response);
+                return response;
             } else {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", true);
                 response.put("text", extractedText);
-                result.success(response);
+                return response;
             }
         } catch (Exception e) {
             Log.e("UltraFastSteganography", "Error extracting text from image", e);
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
             response.put("error", e.getMessage());
-            result.success(response);
+            return response;
+        }
+    }
+    
+    // ============== BATCH TEXT METHODS ==============
+    // Each item's result is also sent as an "item" event on the jobs channel
+    // as soon as that carrier is done.
+    private Map<String, Object> handleHideTextInImages(MethodCall call, ProgressListener listener) {
+        try {
+            String text = call.argument("text");
+            List<String> carrierUris = call.argument("carrierUris");
+            
+            if (text == null || carrierUris == null) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", false);
+                response.put("error", "Missing required parameters");
+                return response;
+            }
+            
+            HideOptions options = parseHideOptions(call);
+            List<String> results = steganographyManager.hideTextInImages(text, carrierUris, options, listener,
+                    (index, itemResult) -> listener.onItem(index, batchItemResponse(itemResult, "path")));
+            return batchResponse(results, "path");
+        } catch (Exception e) {
+            Log.e("UltraFastSteganography", "Error hiding text in images", e);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("error", e.getMessage());
+            return response;
+        }
+    }
+    
+    private Map<String, Object> handleExtractTextFromImages(MethodCall call, ProgressListener listener) {
+        try {
+            List<String> carrierUris = call.argument("carrierUris");
+            
+            if (carrierUris == null) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("success", false);
+                response.put("error", "Missing required parameters");
+                return response;
+            }
+            
+            List<String> results = steganographyManager.extractTextFromImages(carrierUris, listener,
+                    (index, itemResult) -> listener.onItem(index, batchItemResponse(itemResult, "text")));
+            return batchResponse(results, "text");
+        } catch (Exception e) {
+            Log.e("UltraFastSteganography", "Error extracting text from images", e);
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("error", e.getMessage());
+            return response;
+        }
+    }
+    
+    private Map<String, Object> batchItemResponse(String itemResult, String key) {
+        Map<String, Object> response = new HashMap<>();
+        if (itemResult.startsWith("Error:")) {
+            response.put("success", false);
+            response.put("error", itemResult.substring(7));
+        } else {
+            response.put("success", true);
+            response.put(key, itemResult);
         }
+        return response;
+    }
+    
+    private Map<String, Object> batchResponse(List<String> results, String key) {
+        List<Map<String, Object>> items = new ArrayList<>(results.size());
+        int succeeded = 0;
+        for (String itemResult : results) {
+            Map<String, Object> item = batchItemResponse(itemResult, key);
+            if (Boolean.TRUE.equals(item.get("success"))) {
+                succeeded++;
+            }
+            items.add(item);
+        }
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("results", items);
+        response.put("succeeded", succeeded);
+        return response;
     }
     
     // ============== NEW IMAGE-IN-IMAGE METHODS ==============
-    private void handleHideImageInImage(MethodCall call, MethodChannel.Result result) {
+    private Map<String, Object> handleHideImageInImage(MethodCall call, ProgressListener listener) {
         try {
             String secretImageUri = call.argument("secretImageUri");
             String carrierUri = call.argument("carrierUri");
@@ -136,33 +510,34 @@ public class MainActivity extends FlutterActivity {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", false);
                 response.put("error", "Missing required parameters");
-                result.success(response);
-                return;
+                return response;
             }
             
-            String outputPath = steganographyManager.hideImageInImage(secretImageUri, carrierUri);
+            HideOptions options = parseHideOptions(call);
+            String outputPath = steganographyManager.hideImageInImage(secretImageUri, carrierUri, options, listener);
             
             if (outputPath.startsWith("Error:")) {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", false);
                 response.put("error", outputPath.substring(7));
-                result.success(response);
+                return response;
             } else {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", true);
                 response.put("path", outputPath);
-                result.success(response);
+                response.put("verification", options.getVerification().getName());
+                return response;
             }
         } catch (Exception e) {
             Log.e("UltraFastSteganography", "Error hiding image in image", e);
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
             response.put("error", e.getMessage());
-            result.success(response);
+            return response;
         }
     }
     
-    private void handleExtractImageFromImage(MethodCall call, MethodChannel.Result result) {
+    private Map<String, Object> handleExtractImageFromImage(MethodCall call, ProgressListener listener) {
         try {
             String carrierUri = call.argument("carrierUri");
             
@@ -170,37 +545,23 @@ public class MainActivity extends FlutterActivity {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", false);
                 response.put("error", "Missing required parameters");
-                result.success(response);
-                return;
+                return response;
             }
             
-            Bitmap extractedImage = steganographyManager.extractImageFromImage(carrierUri);
-            
-            if (extractedImage == null) {
-                Map<String, Object> response = new HashMap<>();
-                response.put("success", false);
-                response.put("error", "Failed to extract image");
-                result.success(response);
-            } else {
-                // Convert bitmap to file and return path
-                String outputPath = steganographyManager.saveBitmapToTempFile(extractedImage);
-                Map<String, Object> response = new HashMap<>();
-                response.put("success", true);
-                response.put("path", outputPath);
-                result.success(response);
-                extractedImage.recycle();
-            }
+            Map<String, Object> response = new HashMap<>(steganographyManager.extractSecretToTempFile(carrierUri, "image", listener));
+            response.put("success", true);
+            return response;
         } catch (Exception e) {
             Log.e("UltraFastSteganography", "Error extracting image from image", e);
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
             response.put("error", e.getMessage());
-            result.success(response);
+            return response;
         }
     }
     
     // ============== NEW IMAGE-IN-VIDEO METHODS ==============
-    private void handleHideImageInVideo(MethodCall call, MethodChannel.Result result) {
+    private Map<String, Object> handleHideImageInVideo(MethodCall call, ProgressListener listener) {
         try {
             String secretImageUri = call.argument("secretImageUri");
             String carrierVideoUri = call.argument("carrierVideoUri");
@@ -209,33 +570,33 @@ public class MainActivity extends FlutterActivity {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", false);
                 response.put("error", "Missing required parameters");
-                result.success(response);
-                return;
+                return response;
             }
             
-            String outputPath = steganographyManager.hideImageInVideo(secretImageUri, carrierVideoUri);
+            HideOptions options = parseHideOptions(call);
+            String outputPath = steganographyManager.hideImageInVideo(secretImageUri, carrierVideoUri, options, listener);
             
             if (outputPath.startsWith("Error:")) {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", false);
                 response.put("error", outputPath.substring(7));
-                result.success(response);
+                return response;
             } else {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", true);
                 response.put("path", outputPath);
-                result.success(response);
+                return response;
             }
         } catch (Exception e) {
             Log.e("UltraFastSteganography", "Error hiding image in video", e);
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
             response.put("error", e.getMessage());
-            result.success(response);
+            return response;
         }
     }
     
-    private void handleExtractImageFromVideo(MethodCall call, MethodChannel.Result result) {
+    private Map<String, Object> handleExtractImageFromVideo(MethodCall call, ProgressListener listener) {
         try {
             String carrierVideoUri = call.argument("carrierVideoUri");
             
@@ -243,37 +604,35 @@ public class MainActivity extends FlutterActivity {
                 Map<String, Object> response = new HashMap<>();
                 response.put("success", false);
                 response.put("error", "Missing required parameters");
-                result.success(response);
-                return;
+                return response;
             }
             
-            Bitmap extractedImage = steganographyManager.extractImageFromVideo(carrierVideoUri);
-            
-            if (extractedImage == null) {
-                Map<String, Object> response = new HashMap<>();
-                response.put("success", false);
-                response.put("error", "Failed to extract image");
-                result.success(response);
-            } else {
-                
-                String outputPath = steganographyManager.saveBitmapToTempFile(extractedImage);
-                Map<String, Object> response = new HashMap<>();
-                response.put("success", true);
-                response.put("path", outputPath);
-                result.success(response);
-                extractedImage.recycle();
-            }
+            Map<String, Object> response = new HashMap<>(steganographyManager.extractSecretToTempFile(carrierVideoUri, "video", listener));
+            response.put("success", true);
+            return response;
         } catch (Exception e) {
             Log.e("UltraFastSteganography", "Error extracting image from video", e);
             Map<String, Object> response = new HashMap<>();
             response.put("success", false);
             response.put("error", e.getMessage());
-            result.success(response);
+            return response;
+        }
+    }
+    
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (steganographyManager != null) {
+            steganographyManager.trimMemory(level);
         }
     }
     
     @Override
     public void onDestroy() {
+        probeExecutor.shutdownNow();
+        if (jobDispatcher != null) {
+            jobDispatcher.shutdown();
+        }
         if (steganographyManager != null) {
             steganographyManager.cleanup();
         }
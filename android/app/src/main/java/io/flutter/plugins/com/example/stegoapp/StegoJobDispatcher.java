@@ -0,0 +1,219 @@
+package com.example.stegoapp;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.stegoapp.steganography.ProgressListener;
+
+import io.flutter.plugin.common.EventChannel;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs steganography jobs off the platform thread. Each job gets an id,
+ * reports progress, per-item batch results and completion through an
+ * EventChannel sink and can be cancelled from Dart while queued or running.
+ */
+public class StegoJobDispatcher implements EventChannel.StreamHandler {
+    private static final String TAG = "StegoJobDispatcher";
+    private static final int WORKER_COUNT = 2;
+    private static final int QUEUE_CAPACITY = 16;
+    private static final long PROGRESS_INTERVAL_NANOS = 100_000_000L;
+
+    public interface Task {
+        Map<String, Object> run(ProgressListener listener) throws Exception;
+    }
+
+    public interface Callback {
+        void onComplete(Map<String, Object> response);
+    }
+
+    private final ThreadPoolExecutor scheduler;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final AtomicLong nextJobId = new AtomicLong(1);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile EventChannel.EventSink eventSink;
+
+    public StegoJobDispatcher() {
+        AtomicInteger threadId = new AtomicInteger();
+        this.scheduler = new ThreadPoolExecutor(WORKER_COUNT, WORKER_COUNT,
+                30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                r -> {
+                    Thread thread = new Thread(r, "stego-job-" + threadId.incrementAndGet());
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                });
+        this.scheduler.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a job and returns its id immediately. The callback runs on the
+     * main thread once the job finishes, fails or is cancelled.
+     *
+     * @throws RejectedExecutionException if the queue is full
+     */
+    public String submit(String method, Task task, Callback callback) {
+        String jobId = method + "-" + nextJobId.getAndIncrement();
+        Job job = new Job(jobId, callback);
+        jobs.put(jobId, job);
+        try {
+            job.future = scheduler.submit(() -> runJob(job, task));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(jobId);
+            throw e;
+        }
+        return jobId;
+    }
+
+    public boolean cancel(String jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null) {
+            return false;
+        }
+        job.cancelled = true;
+        Future<?> future = job.future;
+        if (future != null) {
+            future.cancel(true);
+        }
+        // Answer right away; a running task stops at its next cancellation
+        // check and its late result is dropped by runJob.
+        if (jobs.remove(jobId) != null) {
+            Map<String, Object> response = cancelledResponse();
+            job.complete(response);
+            mainHandler.post(() -> job.callback.onComplete(response));
+        }
+        return true;
+    }
+
+    public int getActiveJobCount() {
+        return jobs.size();
+    }
+
+    public void shutdown() {
+        for (Job job : jobs.values()) {
+            job.cancelled = true;
+        }
+        scheduler.shutdownNow();
+        jobs.clear();
+    }
+
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+        eventSink = events;
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+        eventSink = null;
+    }
+
+    private void runJob(Job job, Task task) {
+        Map<String, Object> response;
+        try {
+            job.throwIfCancelled();
+            response = task.run(job);
+            if (job.cancelled) {
+                response = cancelledResponse();
+            }
+        } catch (Exception e) {
+            if (job.cancelled) {
+                response = cancelledResponse();
+            } else {
+                Log.e(TAG, "Job " + job.id + " failed", e);
+                response = new HashMap<>();
+                response.put("success", false);
+                response.put("error", e.getMessage());
+            }
+        }
+        if (jobs.remove(job.id) == null) {
+            return;
+        }
+        Map<String, Object> finalResponse = response;
+        job.complete(finalResponse);
+        mainHandler.post(() -> job.callback.onComplete(finalResponse));
+    }
+
+    private Map<String, Object> cancelledResponse() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", false);
+        response.put("cancelled", true);
+        response.put("error", "Cancelled");
+        return response;
+    }
+
+    private void emit(Map<String, Object> event) {
+        mainHandler.post(() -> {
+            EventChannel.EventSink sink = eventSink;
+            if (sink != null) {
+                sink.success(event);
+            }
+        });
+    }
+
+    private class Job implements ProgressListener {
+        final String id;
+        volatile boolean cancelled;
+        volatile Future<?> future;
+        final Callback callback;
+        private long lastProgressNanos;
+
+        Job(String id, Callback callback) {
+            this.id = id;
+            this.callback = callback;
+        }
+
+        @Override
+        public void onProgress(String stage, long current, long total) {
+            long now = System.nanoTime();
+            synchronized (this) {
+                if (current < total && now - lastProgressNanos < PROGRESS_INTERVAL_NANOS) {
+                    return;
+                }
+                lastProgressNanos = now;
+            }
+            Map<String, Object> event = new HashMap<>();
+            event.put("jobId", id);
+            event.put("event", "progress");
+            event.put("stage", stage);
+            event.put("current", current);
+            event.put("total", total);
+            emit(event);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void onItem(int index, Map<String, Object> result) {
+            if (cancelled) {
+                return;
+            }
+            Map<String, Object> event = new HashMap<>();
+            event.put("jobId", id);
+            event.put("event", "item");
+            event.put("index", index);
+            event.put("result", result);
+            emit(event);
+        }
+
+        void complete(Map<String, Object> response) {
+            Map<String, Object> event = new HashMap<>();
+            event.put("jobId", id);
+            event.put("event", Boolean.TRUE.equals(response.get("cancelled")) ? "cancelled" : "done");
+            event.put("result", response);
+            emit(event);
+        }
+    }
+}
@@ -1,9 +1,11 @@
 package com.example.stegoapp;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
+import android.os.Debug;
 import android.util.Log;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -11,7 +13,18 @@ import java.util.concurrent.Executors;
 import net.jpountz.lz4.LZ4Factory;
 
 import com.example.stegoapp.steganography.TextSteganography;
+import com.example.stegoapp.steganography.BatchSteganography;
+import com.example.stegoapp.steganography.HideOptions;
+import com.example.stegoapp.steganography.LsbLayout;
+import com.example.stegoapp.steganography.PayloadCodec;
+import com.example.stegoapp.steganography.PayloadSource;
+import com.example.stegoapp.steganography.PixelBufferPool;
+import com.example.stegoapp.steganography.PixelCache;
 import com.example.stegoapp.steganography.ImageSteganography;
+import com.example.stegoapp.steganography.ProgressListener;
+import com.example.stegoapp.steganography.StageMetrics;
+import com.example.stegoapp.steganography.Tracer;
+import com.example.stegoapp.steganography.TaskGranularity;
 import com.example.stegoapp.steganography.VideoSteganography;
 
 
@@ -26,18 +39,27 @@ import net.jpountz.lz4.LZ4Factory;
 import net.jpountz.lz4.LZ4FastDecompressor;
 import net.jpountz.lz4.LZ4Compressor;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 import android.media.MediaExtractor;
@@ -51,46 +73,237 @@ public class UltraFastSteganography {
     private final TextSteganography textSteganography;
     private final ImageSteganography imageSteganography;
     private final VideoSteganography videoSteganography;
-    private final ExecutorService executor;
+    private final BatchSteganography batchSteganography;
+    private final ForkJoinPool executor;
     private final LZ4Factory lz4Factory;
+    private final TaskGranularity granularity;
+    private final PixelCache pixelCache;
+    private final PixelBufferPool pixelPool;
+    private final StageMetrics stageMetrics;
+    private final Context context;
 
     public UltraFastSteganography(Context context) {
+        this.context = context;
         this.lz4Factory = LZ4Factory.fastestInstance();
-        this.executor = Executors.newFixedThreadPool(TextSteganography.THREAD_COUNT);
-        this.textSteganography = new TextSteganography(context, executor, lz4Factory);
+        this.executor = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        this.granularity = new TaskGranularity();
+        this.pixelCache = new PixelCache(context, PixelCache.DEFAULT_MAX_BYTES);
+        this.pixelPool = new PixelBufferPool(PixelBufferPool.DEFAULT_MAX_IDLE_BYTES,
+                PixelBufferPool.DEFAULT_MAX_TOTAL_BYTES);
+        this.stageMetrics = new StageMetrics();
+        this.textSteganography = new TextSteganography(context, executor, lz4Factory, granularity, pixelCache, pixelPool,
+                stageMetrics);
         this.imageSteganography = new ImageSteganography(context, textSteganography);
-        this.videoSteganography = new VideoSteganography(context);
+        this.batchSteganography = new BatchSteganography(textSteganography);
+        this.videoSteganography = new VideoSteganography(context, textSteganography.getPayloadCodec(), stageMetrics);
     }
 
     public String hideTextInImage(String text, String carrierUri) {
         return textSteganography.hideTextInImage(text, carrierUri);
     }
 
+    public String hideTextInImage(String text, String carrierUri, HideOptions options, ProgressListener listener) {
+        return textSteganography.hideTextInImage(text, carrierUri, options, listener);
+    }
+
     public String extractTextFromImage(String carrierUri) {
         return textSteganography.extractTextFromImage(carrierUri);
     }
 
+    public String extractTextFromImage(String carrierUri, ProgressListener listener) {
+        return textSteganography.extractTextFromImage(carrierUri, listener);
+    }
+
+    public List<String> hideTextInImages(String text, List<String> carrierUris, HideOptions options,
+                                         ProgressListener listener, BatchSteganography.ItemCallback callback) {
+        return batchSteganography.hideTextInImages(text, carrierUris, options, listener, callback);
+    }
+
+    public List<String> extractTextFromImages(List<String> carrierUris, ProgressListener listener,
+                                              BatchSteganography.ItemCallback callback) {
+        return batchSteganography.extractTextFromImages(carrierUris, listener, callback);
+    }
+
     public String hideImageInImage(String secretImageUri, String carrierUri) {
         return imageSteganography.hideImageInImage(secretImageUri, carrierUri);
     }
 
+    public String hideImageInImage(String secretImageUri, String carrierUri, HideOptions options, ProgressListener listener) {
+        return imageSteganography.hideImageInImage(secretImageUri, carrierUri, options, listener);
+    }
+
     public Bitmap extractImageFromImage(String carrierUri) {
         return imageSteganography.extractImageFromImage(carrierUri);
     }
 
+    public Bitmap extractImageFromImage(String carrierUri, ProgressListener listener) {
+        return imageSteganography.extractImageFromImage(carrierUri, listener);
+    }
+
     public String hideImageInVideo(String secretImageUri, String carrierVideoUri) {
         return videoSteganography.hideImageInVideo(secretImageUri, carrierVideoUri);
     }
 
+    public String hideImageInVideo(String secretImageUri, String carrierVideoUri, HideOptions hideOptions, ProgressListener listener) {
+        return videoSteganography.hideImageInVideo(secretImageUri, carrierVideoUri, hideOptions, listener);
+    }
+
     public Bitmap extractImageFromVideo(String carrierVideoUri) {
         return videoSteganography.extractImageFromVideo(carrierVideoUri);
     }
 
+    public Bitmap extractImageFromVideo(String carrierVideoUri, ProgressListener listener) {
+        return videoSteganography.extractImageFromVideo(carrierVideoUri, listener);
+    }
+
+    public PayloadCodec.Decoded extractSecretFromImage(String carrierUri, ProgressListener listener) throws IOException {
+        return imageSteganography.extractSecretFromImage(carrierUri, listener);
+    }
+
+    public PayloadCodec.Decoded extractSecretFromVideo(String carrierVideoUri, ProgressListener listener) throws IOException {
+        return videoSteganography.extractSecretFromVideo(carrierVideoUri, listener);
+    }
+
+    public String saveSecretToTempFile(PayloadCodec.Decoded secret) throws IOException {
+        return imageSteganography.saveSecretToTempFile(secret);
+    }
+
+    /**
+     * Streams the secret hidden in an image or video ({@code type} "image" or
+     * "video") into a new cache file, renamed for its MIME type once the
+     * container header has been read. Returns "path", "mimeType" and
+     * "length"; a failed extraction leaves no file behind.
+     */
+    public Map<String, Object> extractSecretToTempFile(String carrierUri, String type, ProgressListener listener) throws IOException {
+        File partial = new File(textSteganography.createTempFile("part"));
+        PayloadCodec.Streamed secret;
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(partial), PayloadCodec.STREAM_CHUNK_BYTES)) {
+            secret = "video".equals(type)
+                    ? videoSteganography.extractSecretTo(carrierUri, out, listener)
+                    : imageSteganography.extractSecretTo(carrierUri, out, listener);
+        } catch (IOException | RuntimeException e) {
+            partial.delete();
+            throw e;
+        }
+        // Payloads from before the MIME type was recorded were always re-encoded PNGs.
+        String mimeType = secret.mimeType != null ? secret.mimeType : "image/png";
+        File output = new File(textSteganography.createTempFile(PayloadSource.extensionFor(mimeType)));
+        if (!partial.renameTo(output)) {
+            partial.delete();
+            throw new IOException("Failed to move extracted secret to " + output);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("path", output.getAbsolutePath());
+        result.put("mimeType", mimeType);
+        result.put("length", secret.length);
+        return result;
+    }
+
     public String saveBitmapToTempFile(Bitmap bitmap) throws IOException {
         return imageSteganography.saveBitmapToTempFile(bitmap);
     }
 
+    /**
+     * Capacity probe for a carrier. Images only have their header read and
+     * video only its sample table, so this is cheap enough to call before
+     * every hide. {@code type} is "image", "video", or null to go by MIME type;
+     * image capacity is for {@code layout}.
+     */
+    public Map<String, Object> getCapacity(String carrierUri, String type, LsbLayout layout,
+                                           ProgressListener listener) throws IOException {
+        type = resolveCarrierType(carrierUri, type);
+        Map<String, Object> capacity = new HashMap<>();
+        capacity.put("type", type);
+        if ("video".equals(type)) {
+            capacity.put("capacityBytes", videoSteganography.getCapacity(carrierUri, listener));
+        } else {
+            int[] bounds = textSteganography.readImageBounds(carrierUri);
+            capacity.put("width", bounds[0]);
+            capacity.put("height", bounds[1]);
+            capacity.put("capacityBytes", TextSteganography.imageCapacity(bounds[0], bounds[1], layout));
+        }
+        return capacity;
+    }
+
+    /** {@code type} if given, otherwise "video" or "image" by the carrier's MIME type. */
+    public String resolveCarrierType(String carrierUri, String type) throws IOException {
+        if (type != null) {
+            return type;
+        }
+        String mimeType = PayloadSource.open(context, carrierUri).getMimeType();
+        return mimeType.startsWith("video/") ? "video" : "image";
+    }
+
+    public void setPartialDecodeEnabled(boolean enabled) {
+        textSteganography.setPartialDecodeEnabled(enabled);
+    }
+
+    public void configureGranularity(int inlineMaxBytes, int chunkBytes) {
+        granularity.configure(inlineMaxBytes, chunkBytes);
+    }
+
+    public void configurePixelCache(long maxBytes) {
+        pixelCache.setMaxBytes(maxBytes);
+    }
+
+    public void configurePixelPool(long maxIdleBytes) {
+        pixelPool.setMaxIdleBytes(maxIdleBytes);
+    }
+
+    public void configurePixelPoolBudget(long maxTotalBytes) {
+        pixelPool.setMaxTotalBytes(maxTotalBytes);
+    }
+
+    public void setTracing(boolean enabled, int capacity) {
+        Tracer.setEnabled(enabled, capacity);
+    }
+
+    /** Writes the trace buffer as Chrome trace JSON to a cache file and returns its path. */
+    public String exportTrace() throws IOException {
+        String outputPath = textSteganography.createTempFile("json");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputPath), StandardCharsets.UTF_8))) {
+            Tracer.exportChromeJson(out);
+        }
+        return outputPath;
+    }
+
+    public void trimMemory(int level) {
+        pixelCache.trimMemory(level);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            pixelPool.clear();
+        }
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("granularity", granularity.getStats());
+        metrics.put("pixelCache", pixelCache.getStats());
+        metrics.put("pixelPool", pixelPool.getStats());
+        metrics.putAll(stageMetrics.getStats());
+        metrics.put("memory", getMemoryGauges());
+        return metrics;
+    }
+
+    /** Point-in-time memory gauges; pooled pixel buffers are the bulk of the direct memory in use. */
+    private Map<String, Object> getMemoryGauges() {
+        Map<String, Object> pool = pixelPool.getStats();
+        Map<String, Object> cache = pixelCache.getStats();
+        Runtime runtime = Runtime.getRuntime();
+        Map<String, Object> memory = new HashMap<>();
+        memory.put("directLeasedBytes", pool.get("leasedBytes"));
+        memory.put("directIdleBytes", pool.get("idleBytes"));
+        memory.put("cachedPixelBytes", cache.get("bytes"));
+        memory.put("nativeHeapAllocatedBytes", Debug.getNativeHeapAllocatedSize());
+        memory.put("javaHeapUsedBytes", runtime.totalMemory() - runtime.freeMemory());
+        memory.put("javaHeapMaxBytes", runtime.maxMemory());
+        return memory;
+    }
+
     public void cleanup() {
+        batchSteganography.shutdown();
+        videoSteganography.shutdown();
+        pixelCache.clear();
+        pixelPool.clear();
         executor.shutdownNow();
         try {
             if (!executor.awaitTermination(500, TimeUnit.MILLISECONDS)) {
@@ -0,0 +1,125 @@
+package com.example.stegoapp.steganography;
+
+import android.util.Log;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hides in or extracts from many carriers in one call. A small fixed pool
+ * works on several carriers at once, so one carrier's decode overlaps
+ * another's embed and PNG encode; the pool size bounds how many decoded
+ * carriers are in memory. Results are handed to the callback as each
+ * carrier finishes, in completion order.
+ */
+public class BatchSteganography {
+    private static final String TAG = "BatchSteganography";
+
+    /** Receives each item's result: an output path or text, or an "Error: ..." string. */
+    public interface ItemCallback {
+        void onItem(int index, String result);
+    }
+
+    private interface ItemTask {
+        String run(String carrierUri, ProgressListener itemListener) throws Exception;
+    }
+
+    private final TextSteganography textSteganography;
+    private final ThreadPoolExecutor pool;
+
+    public BatchSteganography(TextSteganography textSteganography) {
+        this.textSteganography = textSteganography;
+        int workers = Math.min(3, Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+        AtomicInteger threadId = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(workers, workers, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                r -> new Thread(r, "stego-batch-" + threadId.incrementAndGet()));
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /** Hides one text in every carrier; the text is compressed once and shared. */
+    public List<String> hideTextInImages(String text, List<String> carrierUris, HideOptions hideOptions,
+                                         ProgressListener listener, ItemCallback callback) {
+        byte[] dataToHide = textSteganography.ultraCompress(text.getBytes(StandardCharsets.UTF_8), hideOptions);
+        return run(carrierUris, listener, callback,
+                (carrierUri, itemListener) -> textSteganography.hidePayloadInImage(dataToHide, carrierUri, hideOptions, itemListener));
+    }
+
+    public List<String> extractTextFromImages(List<String> carrierUris, ProgressListener listener, ItemCallback callback) {
+        return run(carrierUris, listener, callback,
+                (carrierUri, itemListener) -> textSteganography.extractTextFromImage(carrierUri, itemListener));
+    }
+
+    private List<String> run(List<String> carrierUris, ProgressListener listener, ItemCallback callback, ItemTask task) {
+        int total = carrierUris.size();
+        // Items only check for cancellation; per-stage progress of many carriers at once would be noise.
+        ProgressListener itemListener = new ProgressListener() {
+            @Override
+            public void onProgress(String stage, long current, long total) {
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return listener.isCancelled();
+            }
+        };
+
+        ExecutorCompletionService<Integer> completion = new ExecutorCompletionService<>(pool);
+        List<Future<Integer>> futures = new ArrayList<>(total);
+        String[] results = new String[total];
+        for (int i = 0; i < total; i++) {
+            int index = i;
+            futures.add(completion.submit(() -> {
+                String result;
+                try {
+                    itemListener.throwIfCancelled();
+                    result = task.run(carrierUris.get(index), itemListener);
+                } catch (CancellationException e) {
+                    throw e;
+                } catch (Exception e) {
+                    Log.e(TAG, "Batch item " + index + " failed", e);
+                    result = "Error: " + e.getMessage();
+                }
+                results[index] = result;
+                return index;
+            }));
+        }
+
+        try {
+            for (int done = 1; done <= total; done++) {
+                int index = completion.take().get();
+                callback.onItem(index, results[index]);
+                listener.onProgress("batch", done, total);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Batch interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof CancellationException) {
+                throw (CancellationException) e.getCause();
+            }
+            throw new IllegalStateException("Batch item failed", e.getCause());
+        } finally {
+            for (Future<Integer> future : futures) {
+                future.cancel(false);
+            }
+        }
+        List<String> ordered = new ArrayList<>(total);
+        Collections.addAll(ordered, results);
+        return ordered;
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.stegoapp.steganography;
+
+import android.graphics.Bitmap;
+
+/**
+ * PNG row source over an ARGB_8888 bitmap. {@code getPixels} already
+ * returns non-premultiplied colours, so rows only need reordering to RGBA.
+ */
+public class BitmapRowSource implements ParallelPngEncoder.RowSource {
+    private final Bitmap bitmap;
+    private final int width;
+    private final int height;
+    private final ThreadLocal<int[]> rowPixels = new ThreadLocal<>();
+
+    public BitmapRowSource(Bitmap bitmap) {
+        this.bitmap = bitmap;
+        this.width = bitmap.getWidth();
+        this.height = bitmap.getHeight();
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public void readRows(int y, int rows, byte[] dst) {
+        int count = rows * width;
+        int[] argb = rowPixels.get();
+        if (argb == null || argb.length < count) {
+            argb = new int[count];
+            rowPixels.set(argb);
+        }
+        bitmap.getPixels(argb, 0, width, 0, y, width, rows);
+        ParallelPngEncoder.argbToRgba(argb, count, dst);
+    }
+}
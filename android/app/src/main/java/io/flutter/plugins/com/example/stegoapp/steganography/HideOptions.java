@@ -0,0 +1,125 @@
+package com.example.stegoapp.steganography;
+
+/**
+ * Per-call settings for the hide operations. A fresh instance carries the
+ * defaults, so callers only set what they want to change.
+ */
+public class HideOptions {
+    public static final int DEFAULT_PNG_LEVEL = 6;
+
+    private int pngLevel = DEFAULT_PNG_LEVEL;
+    private VerificationLevel verification = VerificationLevel.HEADER;
+    private PayloadCodec.Choice compression;
+    private long compressionBudgetMs = PayloadCodec.DEFAULT_BUDGET_MS;
+    private boolean interleavedRemux = true;
+    private boolean inPlace;
+    private int lsbDepth = 1;
+    private boolean alphaChannel;
+
+    public static HideOptions defaults() {
+        return new HideOptions();
+    }
+
+    public int getPngLevel() {
+        return pngLevel;
+    }
+
+    /** Deflate level (0-9) for the stego PNG; lower is faster, output stays lossless. */
+    public HideOptions setPngLevel(int pngLevel) {
+        if (pngLevel < 0 || pngLevel > 9) {
+            throw new IllegalArgumentException("PNG compression level must be 0-9: " + pngLevel);
+        }
+        this.pngLevel = pngLevel;
+        return this;
+    }
+
+    public VerificationLevel getVerification() {
+        return verification;
+    }
+
+    public HideOptions setVerification(VerificationLevel verification) {
+        this.verification = verification;
+        return this;
+    }
+
+    /** Fixed payload codec, or null to let {@link PayloadCodec#choose} pick one. */
+    public PayloadCodec.Choice getCompression() {
+        return compression;
+    }
+
+    public HideOptions setCompression(PayloadCodec.Choice compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public long getCompressionBudgetMs() {
+        return compressionBudgetMs;
+    }
+
+    /** Time the automatic codec choice may spend compressing the payload. */
+    public HideOptions setCompressionBudgetMs(long compressionBudgetMs) {
+        if (compressionBudgetMs < 0) {
+            throw new IllegalArgumentException("Compression budget must not be negative: " + compressionBudgetMs);
+        }
+        this.compressionBudgetMs = compressionBudgetMs;
+        return this;
+    }
+
+    public boolean isInterleavedRemux() {
+        return interleavedRemux;
+    }
+
+    /**
+     * Video only: copy all tracks in one interleaved pass (the default) or,
+     * when false, the video track first and then each other track in turn.
+     */
+    public HideOptions setInterleavedRemux(boolean interleavedRemux) {
+        this.interleavedRemux = interleavedRemux;
+        return this;
+    }
+
+    public boolean isInPlace() {
+        return inPlace;
+    }
+
+    /**
+     * Image only: embed straight into the decoded carrier bitmap and encode
+     * from it, holding one frame instead of a bitmap plus a pixel buffer.
+     * The carrier is then not added to the pixel cache.
+     */
+    public HideOptions setInPlace(boolean inPlace) {
+        this.inPlace = inPlace;
+        return this;
+    }
+
+    public int getLsbDepth() {
+        return lsbDepth;
+    }
+
+    /**
+     * Image only: low bits (1-4) of each channel that carry payload. Deeper
+     * embedding packs the payload into fewer rows at the cost of visible
+     * noise; the extractor reads the depth back from the header.
+     */
+    public HideOptions setLsbDepth(int lsbDepth) {
+        if (lsbDepth < 1 || lsbDepth > LsbLayout.MAX_DEPTH) {
+            throw new IllegalArgumentException("LSB depth must be 1-" + LsbLayout.MAX_DEPTH + ": " + lsbDepth);
+        }
+        this.lsbDepth = lsbDepth;
+        return this;
+    }
+
+    public boolean isAlphaChannel() {
+        return alphaChannel;
+    }
+
+    /** Image only: also embed into the alpha channel's low bits. */
+    public HideOptions setAlphaChannel(boolean alphaChannel) {
+        this.alphaChannel = alphaChannel;
+        return this;
+    }
+
+    public LsbLayout getLayout() {
+        return LsbLayout.of(lsbDepth, alphaChannel);
+    }
+}
@@ -8,11 +8,10 @@ import android.util.Log;
 import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.concurrent.CountDownLatch;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
 
 public class ImageSteganography {
     private static final String TAG = "ImageSteganography";
@@ -29,25 +28,38 @@ public class ImageSteganography {
     }
 
     public String hideImageInImage(String secretImageUri, String carrierUri) {
+        return hideImageInImage(secretImageUri, carrierUri, HideOptions.defaults(), ProgressListener.NONE);
+    }
+
+    public String hideImageInImage(String secretImageUri, String carrierUri, HideOptions hideOptions, ProgressListener listener) {
+        StageMetrics metrics = textSteganography.getMetrics();
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
         try {
-            Bitmap secretBitmap = loadBitmap(secretImageUri);
-            Bitmap carrierBitmap = loadBitmap(carrierUri);
-            
-            ByteArrayOutputStream stream = new ByteArrayOutputStream();
-            secretBitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
-            byte[] secretData = stream.toByteArray();
-            secretBitmap.recycle();
+            PayloadSource secret = PayloadSource.open(context, secretImageUri);
+            byte[] dataToHide = textSteganography.getPayloadCodec().encode(secret,
+                    hideOptions.getCompression(), hideOptions.getCompressionBudgetMs());
+            metrics.record(StageMetrics.Stage.COMPRESS, startTime, Math.max(0, secret.getLength()));
+            listener.throwIfCancelled();
             
-            return hideBinaryInImage(secretData, carrierBitmap);
+            String result = textSteganography.hidePayloadInImage(dataToHide, carrierUri, hideOptions, listener);
+            succeeded = true;
+            return result;
         } catch (Exception e) {
             Log.e(TAG, "Error hiding image in image", e);
             return "Error: " + e.getMessage();
+        } finally {
+            metrics.recordOperation("hideImageInImage", startTime, succeeded);
         }
     }
 
     public Bitmap extractImageFromImage(String carrierUri) {
+        return extractImageFromImage(carrierUri, ProgressListener.NONE);
+    }
+
+    public Bitmap extractImageFromImage(String carrierUri, ProgressListener listener) {
         try {
-            byte[] imageData = extractBinaryFromImage(carrierUri);
+            byte[] imageData = extractBinaryFromImage(carrierUri, listener).data;
             return BitmapFactory.decodeByteArray(imageData, 0, imageData.length);
         } catch (Exception e) {
             Log.e(TAG, "Error extracting image from image", e);
@@ -55,120 +67,51 @@ public class ImageSteganography {
         }
     }
 
-    private String hideBinaryInImage(byte[] data, Bitmap carrierBitmap) throws IOException {
-        int width = carrierBitmap.getWidth();
-        int height = carrierBitmap.getHeight();
-        int pixelCount = width * height;
-        
-        byte[] dataToHide = textSteganography.ultraCompress(data);
-        int dataLength = dataToHide.length;
-        
-        int bitsAvailable = (pixelCount - TextSteganography.LENGTH_BITS) * 3;
-        if (dataLength * 8 > bitsAvailable) {
-            carrierBitmap.recycle();
-            throw new IOException("Image too small for data");
-        }
-        
-        ByteBuffer pixelBuffer = ByteBuffer.allocateDirect(pixelCount * 4);
-        pixelBuffer.order(ByteOrder.nativeOrder());
-        carrierBitmap.copyPixelsToBuffer(pixelBuffer);
-        carrierBitmap.recycle();
-        pixelBuffer.rewind();
-        
-        for (int i = 0; i < TextSteganography.LENGTH_BITS; i++) {
-            int pos = i * 4;
-            byte r = pixelBuffer.get(pos + 2);
-            r = (byte)((r & 0xFE) | ((dataLength >> i) & 1));
-            pixelBuffer.put(pos + 2, r);
-        }
-        
-        int dataBits = dataLength * 8;
-        int bitsPerThread = (dataBits + TextSteganography.THREAD_COUNT - 1) / TextSteganography.THREAD_COUNT;
-        CountDownLatch latch = new CountDownLatch(TextSteganography.THREAD_COUNT);
-        
-        for (int t = 0; t < TextSteganography.THREAD_COUNT; t++) {
-            final int startBit = t * bitsPerThread;
-            final int endBit = Math.min((t + 1) * bitsPerThread, dataBits);
-            
-            textSteganography.executor.execute(() -> {
-                try {
-                    textSteganography.embedDataParallel(pixelBuffer, dataToHide, TextSteganography.LENGTH_BITS, startBit, endBit);
-                } finally {
-                    latch.countDown();
-                }
-            });
-        }
-        
+    /** Extracts the hidden secret as its original bytes, with the MIME type it was hidden with. */
+    public PayloadCodec.Decoded extractSecretFromImage(String carrierUri, ProgressListener listener) throws IOException {
+        return extractBinaryFromImage(carrierUri, listener);
+    }
+
+    /**
+     * Streams the hidden secret into {@code sink} as it is extracted and
+     * decompressed, without holding it in memory.
+     */
+    public PayloadCodec.Streamed extractSecretTo(String carrierUri, OutputStream sink, ProgressListener listener) throws IOException {
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
         try {
-            latch.await(10, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            PayloadCodec.Streamed streamed = textSteganography.extractPayloadTo(carrierUri, sink, listener);
+            succeeded = true;
+            return streamed;
+        } finally {
+            textSteganography.getMetrics().recordOperation("extractImageFromImage", startTime, succeeded);
         }
-        
-        pixelBuffer.rewind();
-        Bitmap resultBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        resultBitmap.copyPixelsFromBuffer(pixelBuffer);
-        
-        String outputPath = textSteganography.createTempFile("png");
+    }
+
+    /**
+     * Writes an extracted secret to the cache directory as-is. Payloads from
+     * before the MIME type was recorded were always re-encoded PNGs.
+     */
+    public String saveSecretToTempFile(PayloadCodec.Decoded secret) throws IOException {
+        String mimeType = secret.mimeType != null ? secret.mimeType : "image/png";
+        String outputPath = textSteganography.createTempFile(PayloadSource.extensionFor(mimeType));
         try (FileOutputStream fos = new FileOutputStream(outputPath)) {
-            resultBitmap.compress(Bitmap.CompressFormat.PNG, 100, fos);
-            fos.flush();
+            fos.write(secret.data);
         }
-        
-        resultBitmap.recycle();
         return outputPath;
     }
 
-    private byte[] extractBinaryFromImage(String carrierUri) throws IOException {
-        Bitmap carrierBitmap = loadBitmap(carrierUri);
-        int width = carrierBitmap.getWidth();
-        int height = carrierBitmap.getHeight();
-        int pixelCount = width * height;
-        
-        ByteBuffer pixelBuffer = ByteBuffer.allocateDirect(pixelCount * 4);
-        pixelBuffer.order(ByteOrder.nativeOrder());
-        carrierBitmap.copyPixelsToBuffer(pixelBuffer);
-        carrierBitmap.recycle();
-        pixelBuffer.rewind();
-        
-        int dataLength = 0;
-        for (int i = 0; i < TextSteganography.LENGTH_BITS; i++) {
-            int pos = i * 4;
-            byte r = pixelBuffer.get(pos + 2);
-            int bit = r & 1;
-            dataLength |= (bit << i);
-        }
-        
-        int maxPossibleLength = (pixelCount - TextSteganography.LENGTH_BITS) * 3 / 8;
-        if (dataLength <= 0 || dataLength > maxPossibleLength) {
-            throw new IOException("Invalid data length");
-        }
-        
-        byte[] extractedData = new byte[dataLength];
-        int dataBits = dataLength * 8;
-        int bitsPerThread = (dataBits + TextSteganography.THREAD_COUNT - 1) / TextSteganography.THREAD_COUNT;
-        CountDownLatch latch = new CountDownLatch(TextSteganography.THREAD_COUNT);
-        
-        for (int t = 0; t < TextSteganography.THREAD_COUNT; t++) {
-            final int startBit = t * bitsPerThread;
-            final int endBit = Math.min((t + 1) * bitsPerThread, dataBits);
-            
-            textSteganography.executor.execute(() -> {
-                try {
-                    textSteganography.extractDataParallel(pixelBuffer, extractedData, TextSteganography.LENGTH_BITS, startBit, endBit);
-                } finally {
-                    latch.countDown();
-                }
-            });
-        }
-        
+    private PayloadCodec.Decoded extractBinaryFromImage(String carrierUri, ProgressListener listener) throws IOException {
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
         try {
-            latch.await(10, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            byte[] extractedData = textSteganography.readPayload(carrierUri, listener);
+            PayloadCodec.Decoded decoded = textSteganography.decodePayload(extractedData);
+            succeeded = true;
+            return decoded;
+        } finally {
+            textSteganography.getMetrics().recordOperation("extractImageFromImage", startTime, succeeded);
         }
-        
-        return textSteganography.ultraDecompress(extractedData);
     }
 
     protected Bitmap loadBitmap(String uriString) throws IOException {
@@ -176,11 +119,13 @@ public class ImageSteganography {
     }
 
     public String saveBitmapToTempFile(Bitmap bitmap) throws IOException {
-        String outputPath = textSteganography.createTempFile("png");
-        try (FileOutputStream fos = new FileOutputStream(outputPath)) {
-            bitmap.compress(Bitmap.CompressFormat.PNG, 100, fos);
-            fos.flush();
+        PixelBufferPool pool = textSteganography.getPixelPool();
+        ByteBuffer pixelBuffer = pool.acquire(bitmap.getWidth() * bitmap.getHeight() * 4);
+        try {
+            bitmap.copyPixelsToBuffer(pixelBuffer);
+            return textSteganography.writePng(pixelBuffer, bitmap.getWidth(), bitmap.getHeight(), HideOptions.DEFAULT_PNG_LEVEL);
+        } finally {
+            pool.release(pixelBuffer);
         }
-        return outputPath;
     }
 }
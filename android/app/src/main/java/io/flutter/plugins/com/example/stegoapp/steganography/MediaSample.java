@@ -0,0 +1,74 @@
+package com.example.stegoapp.steganography;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.os.Build;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One compressed sample read from a {@link MediaExtractor}: its bytes in a
+ * pooled direct buffer plus the metadata the muxer needs. Instances are
+ * reused frame after frame.
+ */
+public class MediaSample {
+    public final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+    public ByteBuffer buffer;
+    public int trackIndex;
+
+    /**
+     * Reads the extractor's current sample, swapping in a larger pooled
+     * buffer when it would not fit. Leaves {@link #buffer} with position 0
+     * and limit at the sample size. Returns false at the end of the stream.
+     */
+    public boolean read(MediaExtractor extractor, SampleBufferPool pool) {
+        if (buffer == null) {
+            buffer = pool.acquire();
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            long sampleSize = extractor.getSampleSize();
+            if (sampleSize > buffer.capacity() && pool.ensureCapacity((int) Math.min(sampleSize, Integer.MAX_VALUE))) {
+                swapBuffer(pool);
+            }
+        }
+        buffer.clear();
+        int size;
+        try {
+            size = extractor.readSampleData(buffer, 0);
+        } catch (IllegalArgumentException e) {
+            // Older extractors cannot report the size up front; retry once with the largest buffer allowed.
+            if (!pool.ensureCapacity(SampleBufferPool.MAX_SAMPLE_CAPACITY) || buffer.capacity() >= pool.getCapacity()) {
+                throw e;
+            }
+            swapBuffer(pool);
+            size = extractor.readSampleData(buffer, 0);
+        }
+        if (size < 0) {
+            return false;
+        }
+        buffer.position(0);
+        buffer.limit(size);
+        trackIndex = extractor.getSampleTrackIndex();
+        info.offset = 0;
+        info.size = size;
+        info.presentationTimeUs = extractor.getSampleTime();
+        info.flags = extractor.getSampleFlags();
+        return true;
+    }
+
+    public boolean isKeyFrame() {
+        return (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
+    }
+
+    public void release(SampleBufferPool pool) {
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+        }
+    }
+
+    private void swapBuffer(SampleBufferPool pool) {
+        pool.release(buffer);
+        buffer = pool.acquire();
+    }
+}
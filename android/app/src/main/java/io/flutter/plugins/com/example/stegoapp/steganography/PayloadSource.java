@@ -0,0 +1,118 @@
+package com.example.stegoapp.steganography;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.OpenableColumns;
+import android.webkit.MimeTypeMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * The original bytes of a secret, read from a file path or a
+ * {@code content://} URI without decoding them. The MIME type travels
+ * with the payload so extraction can hand back the same file.
+ */
+public class PayloadSource implements PayloadCodec.Source {
+    public static final String MIME_OCTET_STREAM = PayloadCodec.MIME_OCTET_STREAM;
+
+    private final Context context;
+    private final String uriString;
+    private final String mimeType;
+    private final long length;
+
+    private PayloadSource(Context context, String uriString, String mimeType, long length) {
+        this.context = context;
+        this.uriString = uriString;
+        this.mimeType = mimeType;
+        this.length = length;
+    }
+
+    public static PayloadSource open(Context context, String uriString) throws IOException {
+        String mimeType = null;
+        long length = -1;
+        if (uriString.startsWith("content://")) {
+            Uri uri = Uri.parse(uriString);
+            mimeType = context.getContentResolver().getType(uri);
+            try (Cursor cursor = context.getContentResolver().query(uri, new String[]{OpenableColumns.SIZE}, null, null, null)) {
+                if (cursor != null && cursor.moveToFirst()) {
+                    int column = cursor.getColumnIndex(OpenableColumns.SIZE);
+                    if (column >= 0 && !cursor.isNull(column)) {
+                        length = cursor.getLong(column);
+                    }
+                }
+            }
+        } else {
+            File file = new File(uriString);
+            if (!file.isFile()) {
+                throw new IOException("Secret file not found: " + uriString);
+            }
+            length = file.length();
+        }
+        if (mimeType == null) {
+            mimeType = guessMimeType(uriString);
+        }
+        return new PayloadSource(context, uriString, mimeType, length);
+    }
+
+    @Override
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    /** Size in bytes, or -1 if the provider does not report it. */
+    @Override
+    public long getLength() {
+        return length;
+    }
+
+    @Override
+    public InputStream openStream() throws IOException {
+        InputStream inputStream;
+        if (uriString.startsWith("content://")) {
+            inputStream = context.getContentResolver().openInputStream(Uri.parse(uriString));
+        } else {
+            inputStream = new FileInputStream(uriString);
+        }
+        if (inputStream == null) {
+            throw new IOException("Cannot open " + uriString);
+        }
+        return inputStream;
+    }
+
+    public byte[] readAll() throws IOException {
+        try (InputStream in = openStream()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length > 0 ? (int) length : 64 * 1024);
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    static String guessMimeType(String uriString) {
+        String extension = MimeTypeMap.getFileExtensionFromUrl(uriString);
+        if (extension == null || extension.isEmpty()) {
+            int dot = uriString.lastIndexOf('.');
+            extension = dot >= 0 ? uriString.substring(dot + 1) : "";
+        }
+        String mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension.toLowerCase(Locale.ROOT));
+        return mimeType != null ? mimeType : MIME_OCTET_STREAM;
+    }
+
+    /** File extension (without the dot) to use when writing a payload of this type back out. */
+    public static String extensionFor(String mimeType) {
+        if (mimeType == null) {
+            return "bin";
+        }
+        String extension = MimeTypeMap.getSingleton().getExtensionFromMimeType(mimeType);
+        return extension != null ? extension : "bin";
+    }
+}
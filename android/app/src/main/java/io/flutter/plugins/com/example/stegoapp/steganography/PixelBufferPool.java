@@ -0,0 +1,273 @@
+package com.example.stegoapp.steganography;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Recycles the direct pixel buffers and decode bitmaps of the image paths.
+ * A full-frame buffer of a 12 MP carrier is 48 MB of native memory that
+ * only goes away when the GC finalizes it, so concurrent jobs allocating
+ * fresh ones quickly run out.
+ *
+ * Requests are rounded up to size classes, four per power of two, so a
+ * returned buffer serves any later request in its class while wasting at
+ * most a quarter of its size. Bitmaps are reused for any decode they are
+ * large enough for (exactly the same size before KitKat), again with at most
+ * a quarter of waste. Idle buffers and bitmaps together are held up
+ * to {@code maxIdleBytes}; beyond that, returns are dropped for the GC and
+ * the largest idle entries are the first to go.
+ *
+ * Leased and idle bytes together stay within {@code maxTotalBytes}. An
+ * allocation that would exceed it first drops idle entries, then waits up
+ * to {@link #ACQUIRE_TIMEOUT_MS} for leases to come back before failing.
+ */
+public class PixelBufferPool {
+    public static final long DEFAULT_MAX_IDLE_BYTES = 96L * 1024 * 1024;
+    public static final long DEFAULT_MAX_TOTAL_BYTES = 256L * 1024 * 1024;
+    public static final long ACQUIRE_TIMEOUT_MS = 10_000;
+    private static final int MIN_CLASS_BYTES = 64 * 1024;
+
+    private final TreeMap<Integer, ArrayDeque<ByteBuffer>> buffers = new TreeMap<>();
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> bitmaps = new TreeMap<>();
+    private final Set<Bitmap> leasedBitmaps = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long maxIdleBytes;
+    private long maxTotalBytes;
+    private long idleBytes;
+    private long leasedBytes;
+    private long highWaterBytes;
+    private long hits;
+    private long misses;
+    private long dropped;
+    private long waits;
+
+    public PixelBufferPool(long maxIdleBytes, long maxTotalBytes) {
+        this.maxIdleBytes = maxIdleBytes;
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    /** Size class (allocation size) serving a request of {@code bytes}. */
+    static int classFor(int bytes) {
+        if (bytes <= MIN_CLASS_BYTES) {
+            return MIN_CLASS_BYTES;
+        }
+        int step = Integer.highestOneBit(bytes - 1) >> 2;
+        long rounded = ((long) bytes + step - 1) / step * step;
+        return (int) Math.min(rounded, Integer.MAX_VALUE);
+    }
+
+    /**
+     * A native-order direct buffer with at least {@code bytes} of capacity,
+     * positioned at 0 with its limit at {@code bytes}. Give it back with
+     * {@link #release(ByteBuffer)} once nothing reads it any more.
+     *
+     * @throws IllegalStateException if the total budget cannot make room for
+     *         the buffer within {@link #ACQUIRE_TIMEOUT_MS}
+     */
+    public ByteBuffer acquire(int bytes) {
+        int size = classFor(bytes);
+        ByteBuffer buffer;
+        synchronized (this) {
+            buffer = takeOrMakeRoom(size);
+            lease(size);
+        }
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        }
+        buffer.clear();
+        buffer.limit(bytes);
+        return buffer;
+    }
+
+    /**
+     * An idle buffer of class {@code size}, or null once a new one fits both
+     * the idle and the total budget; waits for leases to be returned while
+     * neither holds.
+     */
+    private ByteBuffer takeOrMakeRoom(int size) {
+        if (size > maxTotalBytes) {
+            throw new IllegalStateException("Pixel buffer of " + size
+                    + " bytes exceeds the pool budget of " + maxTotalBytes + " bytes");
+        }
+        long deadline = System.nanoTime() + ACQUIRE_TIMEOUT_MS * 1_000_000L;
+        boolean waited = false;
+        while (true) {
+            ArrayDeque<ByteBuffer> free = buffers.get(size);
+            if (free != null && !free.isEmpty()) {
+                idleBytes -= size;
+                hits++;
+                return free.pop();
+            }
+            // Make room for the new allocation by letting idle entries go.
+            trimIdleTo(Math.min(maxIdleBytes, maxTotalBytes - leasedBytes) - size);
+            if (leasedBytes + idleBytes + size <= maxTotalBytes) {
+                misses++;
+                return null;
+            }
+            if (!waited) {
+                waits++;
+                waited = true;
+            }
+            long remainingMs = (deadline - System.nanoTime()) / 1_000_000L;
+            if (remainingMs <= 0) {
+                throw new IllegalStateException("Pixel buffer budget exhausted: " + leasedBytes
+                        + " of " + maxTotalBytes + " bytes leased, " + size + " more requested");
+            }
+            try {
+                wait(remainingMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for pixel buffer budget");
+            }
+        }
+    }
+
+    public synchronized void release(ByteBuffer buffer) {
+        int size = buffer.capacity();
+        leasedBytes -= size;
+        notifyAll();
+        if (classFor(size) != size || !buffer.isDirect() || idleBytes + size > maxIdleBytes) {
+            dropped++;
+            return;
+        }
+        buffers.computeIfAbsent(size, k -> new ArrayDeque<>()).push(buffer);
+        idleBytes += size;
+    }
+
+    /**
+     * An idle mutable ARGB_8888 bitmap that can be passed as
+     * {@code inBitmap} to decode a {@code width} x {@code height} image, or
+     * null if none fits. From KitKat any bitmap with a large enough
+     * allocation works; before that the dimensions must match exactly.
+     */
+    public Bitmap acquireBitmap(int width, int height) {
+        long needed = (long) width * height * 4;
+        if (needed > Integer.MAX_VALUE) {
+            return null;
+        }
+        boolean anySize = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+        synchronized (this) {
+            // Bitmaps are keyed by exact allocation size; accept up to a quarter of waste.
+            Map.Entry<Integer, ArrayDeque<Bitmap>> fit = bitmaps.ceilingEntry((int) needed);
+            while (fit != null && fit.getKey() <= needed + needed / 4) {
+                Iterator<Bitmap> it = fit.getValue().iterator();
+                while (it.hasNext()) {
+                    Bitmap bitmap = it.next();
+                    if (anySize || (bitmap.getWidth() == width && bitmap.getHeight() == height)) {
+                        it.remove();
+                        if (fit.getValue().isEmpty()) {
+                            bitmaps.remove(fit.getKey());
+                        }
+                        idleBytes -= fit.getKey();
+                        lease(fit.getKey());
+                        leasedBitmaps.add(bitmap);
+                        hits++;
+                        return bitmap;
+                    }
+                }
+                fit = bitmaps.higherEntry(fit.getKey());
+            }
+            misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Takes back a decode bitmap, whether it came from
+     * {@link #acquireBitmap} or was freshly decoded. Bitmaps that are not
+     * mutable ARGB_8888 cannot be reused and are recycled.
+     */
+    public void releaseBitmap(Bitmap bitmap) {
+        int size = bitmap.getAllocationByteCount();
+        boolean reusable = bitmap.isMutable() && bitmap.getConfig() == Bitmap.Config.ARGB_8888
+                && !bitmap.isRecycled();
+        synchronized (this) {
+            if (leasedBitmaps.remove(bitmap)) {
+                leasedBytes -= size;
+                notifyAll();
+            }
+            if (reusable && idleBytes + size <= maxIdleBytes
+                    && leasedBytes + idleBytes + size <= maxTotalBytes) {
+                bitmaps.computeIfAbsent(size, k -> new ArrayDeque<>()).push(bitmap);
+                idleBytes += size;
+                return;
+            }
+            dropped++;
+        }
+        bitmap.recycle();
+    }
+
+    private void lease(long size) {
+        leasedBytes += size;
+        highWaterBytes = Math.max(highWaterBytes, leasedBytes + idleBytes);
+    }
+
+    public synchronized void setMaxIdleBytes(long maxIdleBytes) {
+        if (maxIdleBytes < 0) {
+            throw new IllegalArgumentException("maxIdleBytes must be >= 0: " + maxIdleBytes);
+        }
+        this.maxIdleBytes = maxIdleBytes;
+        trimIdleTo(maxIdleBytes);
+    }
+
+    public synchronized void setMaxTotalBytes(long maxTotalBytes) {
+        if (maxTotalBytes <= 0) {
+            throw new IllegalArgumentException("maxTotalBytes must be > 0: " + maxTotalBytes);
+        }
+        this.maxTotalBytes = maxTotalBytes;
+        trimIdleTo(Math.max(0, maxTotalBytes - leasedBytes));
+        notifyAll();
+    }
+
+    /** Drops every idle buffer and bitmap. */
+    public synchronized void clear() {
+        trimIdleTo(0);
+    }
+
+    private void trimIdleTo(long limit) {
+        while (idleBytes > limit && !(buffers.isEmpty() && bitmaps.isEmpty())) {
+            int bufferClass = buffers.isEmpty() ? 0 : buffers.lastKey();
+            int bitmapClass = bitmaps.isEmpty() ? 0 : bitmaps.lastKey();
+            if (bufferClass >= bitmapClass) {
+                ArrayDeque<ByteBuffer> free = buffers.get(bufferClass);
+                free.pop();
+                if (free.isEmpty()) {
+                    buffers.remove(bufferClass);
+                }
+                idleBytes -= bufferClass;
+            } else {
+                ArrayDeque<Bitmap> free = bitmaps.get(bitmapClass);
+                free.pop().recycle();
+                if (free.isEmpty()) {
+                    bitmaps.remove(bitmapClass);
+                }
+                idleBytes -= bitmapClass;
+            }
+            dropped++;
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maxIdleBytes", maxIdleBytes);
+        stats.put("idleBytes", idleBytes);
+        stats.put("leasedBytes", leasedBytes);
+        stats.put("highWaterBytes", highWaterBytes);
+        stats.put("maxTotalBytes", maxTotalBytes);
+        stats.put("waits", waits);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("dropped", dropped);
+        return stats;
+    }
+}
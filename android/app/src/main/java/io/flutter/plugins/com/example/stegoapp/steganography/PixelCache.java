@@ -0,0 +1,228 @@
+package com.example.stegoapp.steganography;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.MediaStore;
+import android.provider.OpenableColumns;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decoded ARGB_8888 carrier pixels in direct buffers, so running extract and
+ * hide on the same carrier decodes it once. Entries are keyed by URI plus
+ * the file's size and modification time, which makes an edited file a miss
+ * rather than a stale hit. Least recently used entries are evicted once the
+ * byte budget is exceeded.
+ *
+ * Cached buffers are shared and must not be written to; callers that embed
+ * into the pixels take them with {@link Entry#detachPixels()}.
+ */
+public class PixelCache {
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Context context;
+    private long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public PixelCache(Context context, long maxBytes) {
+        this.context = context;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Pixels of one decoded image in a buffer from the {@link PixelBufferPool}.
+     * The buffer is reference counted: whoever creates an entry or gets it
+     * from the cache holds one reference and must {@link #release()} it, and
+     * the cache holds one while the entry is resident. The buffer goes back
+     * to the pool when the last reference is released.
+     */
+    public static final class Entry {
+        public final int width;
+        public final int height;
+        private final PixelBufferPool pool;
+        private final ByteBuffer pixels;
+        private int refs = 1;
+
+        public Entry(PixelBufferPool pool, ByteBuffer pixels, int width, int height) {
+            this.pool = pool;
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+        }
+
+        /** A read-only view of the pixels, positioned at the first one. */
+        public ByteBuffer pixels() {
+            ByteBuffer view = pixels.asReadOnlyBuffer().order(ByteOrder.nativeOrder());
+            view.limit(byteCount());
+            view.position(0);
+            return view;
+        }
+
+        /**
+         * Gives up the caller's reference in exchange for pixels it may
+         * modify and must hand back to the pool. If no one else holds the
+         * entry that is the buffer itself, otherwise a pooled copy.
+         */
+        public ByteBuffer detachPixels() {
+            synchronized (this) {
+                if (refs == 1) {
+                    refs = 0;
+                    pixels.clear();
+                    pixels.limit(byteCount());
+                    return pixels;
+                }
+            }
+            ByteBuffer copy = pool.acquire(byteCount());
+            copy.put(pixels());
+            copy.rewind();
+            release();
+            return copy;
+        }
+
+        synchronized void retain() {
+            refs++;
+        }
+
+        public void release() {
+            boolean last;
+            synchronized (this) {
+                last = --refs == 0;
+            }
+            if (last) {
+                pool.release(pixels);
+            }
+        }
+
+        int byteCount() {
+            return width * height * 4;
+        }
+    }
+
+    /**
+     * Cache key for a file path or {@code content://} URI, or null if its size
+     * and modification time cannot be determined, in which case the image is
+     * not cached.
+     */
+    public String keyFor(String uriString) {
+        long size = -1;
+        long modified = -1;
+        if (uriString.startsWith("content://")) {
+            try (Cursor cursor = context.getContentResolver().query(Uri.parse(uriString), null, null, null, null)) {
+                if (cursor != null && cursor.moveToFirst()) {
+                    size = readLong(cursor, OpenableColumns.SIZE);
+                    modified = readLong(cursor, DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+                    if (modified < 0) {
+                        long seconds = readLong(cursor, MediaStore.MediaColumns.DATE_MODIFIED);
+                        modified = seconds < 0 ? -1 : seconds * 1000;
+                    }
+                }
+            } catch (RuntimeException e) {
+                return null;
+            }
+        } else {
+            File file = new File(uriString);
+            if (file.isFile()) {
+                size = file.length();
+                modified = file.lastModified();
+            }
+        }
+        if (size < 0 || modified <= 0) {
+            return null;
+        }
+        return uriString + '|' + size + '|' + modified;
+    }
+
+    private static long readLong(Cursor cursor, String column) {
+        int index = cursor.getColumnIndex(column);
+        return index >= 0 && !cursor.isNull(index) ? cursor.getLong(index) : -1;
+    }
+
+    /** The cached entry for {@code key}, with a reference the caller must release, or null. */
+    public synchronized Entry get(String key) {
+        Entry entry = key != null ? entries.get(key) : null;
+        if (entry != null) {
+            entry.retain();
+            hits++;
+        } else {
+            misses++;
+        }
+        return entry;
+    }
+
+    /** Caches {@code entry} unless it alone exceeds the budget; returns whether it was stored. */
+    public synchronized boolean put(String key, Entry entry) {
+        if (key == null || entry.byteCount() > maxBytes) {
+            return false;
+        }
+        entry.retain();
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.byteCount();
+            previous.release();
+        }
+        bytes += entry.byteCount();
+        trimTo(maxBytes);
+        return true;
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("maxBytes must be >= 0: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        trimTo(maxBytes);
+    }
+
+    /**
+     * Responds to {@link ComponentCallbacks2#onTrimMemory}: drops everything
+     * once the app is in the background or memory is critical, and halves
+     * the cache while the app is running but memory is getting low.
+     */
+    public synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimTo(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimTo(bytes / 2);
+        }
+    }
+
+    public synchronized void clear() {
+        trimTo(0);
+    }
+
+    private void trimTo(long limit) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (bytes > limit && it.hasNext()) {
+            Entry entry = it.next();
+            bytes -= entry.byteCount();
+            it.remove();
+            entry.release();
+            evictions++;
+        }
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maxBytes", maxBytes);
+        stats.put("bytes", bytes);
+        stats.put("entries", entries.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        return stats;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.stegoapp.steganography;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes horizontal row bands of a carrier image without decoding the
+ * whole frame. PNG, JPEG and WebP carriers are supported; anything else
+ * makes {@link #open} throw so callers can fall back to a full decode.
+ */
+public class RegionPixelReader implements ArgbRowReader, Closeable {
+    private final BitmapRegionDecoder decoder;
+    private final BitmapFactory.Options options;
+
+    private RegionPixelReader(BitmapRegionDecoder decoder) {
+        this.decoder = decoder;
+        this.options = new BitmapFactory.Options();
+        this.options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        this.options.inPremultiplied = false;
+    }
+
+    public static RegionPixelReader open(Context context, String uriString) throws IOException {
+        BitmapRegionDecoder decoder;
+        if (uriString.startsWith("content://")) {
+            try (InputStream inputStream = context.getContentResolver().openInputStream(Uri.parse(uriString))) {
+                if (inputStream == null) {
+                    throw new IOException("Cannot open " + uriString);
+                }
+                decoder = BitmapRegionDecoder.newInstance(inputStream, false);
+            }
+        } else {
+            decoder = BitmapRegionDecoder.newInstance(uriString, false);
+        }
+        if (decoder == null) {
+            throw new IOException("Region decoding not supported for " + uriString);
+        }
+        return new RegionPixelReader(decoder);
+    }
+
+    @Override
+    public int getWidth() {
+        return decoder.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return decoder.getHeight();
+    }
+
+    @Override
+    public void decodeArgbRows(int top, int bottom, int[] dst, int offset) throws IOException {
+        int width = getWidth();
+        long traceStart = Tracer.begin();
+        Bitmap band = decoder.decodeRegion(new Rect(0, top, width, bottom), options);
+        if (band == null) {
+            throw new IOException("Failed to decode rows " + top + " to " + bottom);
+        }
+        try {
+            band.getPixels(dst, offset, width, 0, 0, width, bottom - top);
+        } finally {
+            band.recycle();
+        }
+        Tracer.end("decodeTile", traceStart, (bottom - top) * (long) width * 4);
+    }
+
+    @Override
+    public void close() {
+        decoder.recycle();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.stegoapp.steganography;
+
+import android.media.MediaFormat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * Direct buffers for compressed media samples. Buffers are recycled between
+ * frames, so a remux allocates only while the largest sample seen so far is
+ * still growing.
+ */
+public class SampleBufferPool {
+    public static final int DEFAULT_SAMPLE_CAPACITY = 1024 * 1024;
+    public static final int MAX_SAMPLE_CAPACITY = 32 * 1024 * 1024;
+
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+    private int capacity;
+
+    public SampleBufferPool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /** Pool sized from the track's advertised maximum input size, if it has one. */
+    public static SampleBufferPool forFormat(MediaFormat format) {
+        int capacity = DEFAULT_SAMPLE_CAPACITY;
+        if (format != null && format.containsKey(MediaFormat.KEY_MAX_INPUT_SIZE)) {
+            capacity = Math.max(capacity, format.getInteger(MediaFormat.KEY_MAX_INPUT_SIZE));
+        }
+        return new SampleBufferPool(capacity);
+    }
+
+    public synchronized ByteBuffer acquire() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null || buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer.capacity() >= capacity) {
+            free.push(buffer);
+        }
+    }
+
+    /** Makes sure future buffers can hold {@code needed} bytes; returns false if that exceeds the cap. */
+    public synchronized boolean ensureCapacity(int needed) {
+        if (needed <= capacity) {
+            return true;
+        }
+        if (needed > MAX_SAMPLE_CAPACITY) {
+            return false;
+        }
+        capacity = Math.min(MAX_SAMPLE_CAPACITY, Integer.highestOneBit(needed - 1) << 1);
+        free.clear();
+        return true;
+    }
+
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.stegoapp.steganography;
+
+import android.media.MediaExtractor;
+import android.media.MediaMuxer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies samples from a {@link MediaExtractor} to a {@link MediaMuxer}
+ * through three stages on their own threads: demux, transform, mux.
+ *
+ * A fixed set of {@link MediaSample}s circulates between the stages over
+ * bounded queues, so memory stays capped at {@code depth} samples and a
+ * slow stage backs up the ones before it. Each stage is single-threaded and
+ * the queues are FIFO, so samples reach the muxer in extractor order.
+ */
+public class SamplePipeline {
+    public static final int DEFAULT_DEPTH = 8;
+
+    /** Edits a sample in place before it is muxed; runs on the transform stage only. */
+    public interface Transform {
+        void apply(MediaSample sample) throws IOException;
+    }
+
+    private static final MediaSample END = new MediaSample();
+    private static final long POLL_MS = 50;
+
+    private final SampleBufferPool pool;
+    private final int depth;
+
+    public SamplePipeline(SampleBufferPool pool, int depth) {
+        this.pool = pool;
+        this.depth = depth;
+    }
+
+    /**
+     * Runs until the extractor reaches the end of its selected tracks.
+     * {@code trackMap} maps extractor track indices to muxer tracks; a null
+     * {@code transform} copies samples unchanged. Returns the number of
+     * samples written.
+     */
+    public long run(MediaExtractor extractor, MediaMuxer muxer, int[] trackMap, Transform transform,
+                    ProgressListener listener) throws IOException {
+        BlockingQueue<MediaSample> free = new ArrayBlockingQueue<>(depth);
+        BlockingQueue<MediaSample> demuxed = new ArrayBlockingQueue<>(depth + 1);
+        BlockingQueue<MediaSample> transformed = new ArrayBlockingQueue<>(depth + 1);
+        for (int i = 0; i < depth; i++) {
+            free.add(new MediaSample());
+        }
+        Run run = new Run();
+
+        Thread demux = new Thread(() -> {
+            MediaSample sample = null;
+            try {
+                while (true) {
+                    sample = run.take(free);
+                    if (listener.isCancelled()) {
+                        throw new CancellationException("Job cancelled");
+                    }
+                    if (!sample.read(extractor, pool)) {
+                        free.add(sample);
+                        sample = null;
+                        break;
+                    }
+                    extractor.advance();
+                    demuxed.put(sample);
+                    sample = null;
+                }
+                demuxed.put(END);
+            } catch (Throwable t) {
+                releaseInFlight(sample);
+                run.fail(t);
+            }
+        }, "stego-demux");
+
+        Thread embed = new Thread(() -> {
+            MediaSample sample = null;
+            try {
+                while (true) {
+                    sample = run.take(demuxed);
+                    if (sample == END) {
+                        break;
+                    }
+                    if (transform != null) {
+                        transform.apply(sample);
+                    }
+                    transformed.put(sample);
+                    sample = null;
+                }
+                transformed.put(END);
+            } catch (Throwable t) {
+                releaseInFlight(sample);
+                run.fail(t);
+            }
+        }, "stego-embed");
+
+        demux.start();
+        embed.start();
+        long written = 0;
+        MediaSample sample = null;
+        try {
+            while (true) {
+                sample = run.take(transformed);
+                if (sample == END) {
+                    break;
+                }
+                muxer.writeSampleData(trackMap[sample.trackIndex], sample.buffer, sample.info);
+                written++;
+                free.add(sample);
+                sample = null;
+            }
+        } catch (Throwable t) {
+            releaseInFlight(sample);
+            run.fail(t);
+        } finally {
+            joinQuietly(demux);
+            joinQuietly(embed);
+            releaseAll(free);
+            releaseAll(demuxed);
+            releaseAll(transformed);
+        }
+        run.rethrow();
+        return written;
+    }
+
+    /** Returns the buffer of a sample a failed stage held outside every queue. */
+    private void releaseInFlight(MediaSample sample) {
+        if (sample != null && sample != END) {
+            sample.release(pool);
+        }
+    }
+
+    private void releaseAll(BlockingQueue<MediaSample> queue) {
+        for (MediaSample sample : queue) {
+            if (sample != END) {
+                sample.release(pool);
+            }
+        }
+        queue.clear();
+    }
+
+    private static void joinQuietly(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Shared failure state; the first error wins and stops every stage. */
+    private static final class Run {
+        private volatile Throwable failure;
+
+        synchronized void fail(Throwable t) {
+            if (failure == null) {
+                failure = t;
+            }
+        }
+
+        MediaSample take(BlockingQueue<MediaSample> queue) throws InterruptedException {
+            while (true) {
+                if (failure != null) {
+                    throw new StageAborted();
+                }
+                MediaSample sample = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (sample != null) {
+                    return sample;
+                }
+            }
+        }
+
+        void rethrow() throws IOException {
+            Throwable t = failure;
+            if (t == null || t instanceof StageAborted) {
+                return;
+            }
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            if (t instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Sample pipeline interrupted");
+            }
+            throw new IOException(t);
+        }
+    }
+
+    /** Thrown inside a stage that stops because another stage failed. */
+    private static final class StageAborted extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        StageAborted() {
+            super(null, null, false, false);
+        }
+    }
+}
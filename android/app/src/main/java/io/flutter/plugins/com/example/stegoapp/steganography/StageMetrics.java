@@ -0,0 +1,167 @@
+package com.example.stegoapp.steganography;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and byte counters per pipeline stage, plus one
+ * histogram and success/failure counts per public operation. Stages are
+ * timed with a chained start time:
+ *
+ * <pre>
+ *   long t = System.nanoTime();
+ *   decode();
+ *   t = metrics.record(Stage.DECODE, t, pixelBytes);
+ *   embed();
+ *   metrics.record(Stage.EMBED, t, payloadBytes);
+ * </pre>
+ *
+ * Where one step drives another, as the PNG encoder pulling region-decoded
+ * tiles of a very large carrier, the time is counted in the driving stage.
+ * Timed stages and operations also become {@link Tracer} spans while
+ * tracing is on.
+ */
+public class StageMetrics {
+    public enum Stage {
+        DECODE("decode"),
+        COPY("copy"),
+        COMPRESS("compress"),
+        EMBED("embed"),
+        EXTRACT("extract"),
+        DECOMPRESS("decompress"),
+        ENCODE("encode"),
+        MUX("mux"),
+        WRITE("write"),
+        VERIFY("verify");
+
+        final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+    }
+
+    private final EnumMap<Stage, LatencyHistogram> latencies = new EnumMap<>(Stage.class);
+    private final EnumMap<Stage, LongAdder> bytes = new EnumMap<>(Stage.class);
+    private final ConcurrentHashMap<String, Operation> operations = new ConcurrentHashMap<>();
+
+    private static final class Operation {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder succeeded = new LongAdder();
+        final LongAdder failed = new LongAdder();
+    }
+
+    public StageMetrics() {
+        for (Stage stage : Stage.values()) {
+            latencies.put(stage, new LatencyHistogram());
+            bytes.put(stage, new LongAdder());
+        }
+    }
+
+    /**
+     * Records the time since {@code startNanos} against {@code stage} and
+     * returns the current time, which starts the next stage.
+     */
+    public long record(Stage stage, long startNanos, long byteCount) {
+        long now = System.nanoTime();
+        recordNanos(stage, now - startNanos, byteCount);
+        Tracer.span(stage.key, startNanos, now, byteCount);
+        return now;
+    }
+
+    public void recordNanos(Stage stage, long nanos, long byteCount) {
+        latencies.get(stage).recordNanos(nanos);
+        bytes.get(stage).add(byteCount);
+    }
+
+    /** Records a whole public operation, e.g. "hideTextInImage", from its start time. */
+    public void recordOperation(String name, long startNanos, boolean succeeded) {
+        Operation operation = operations.computeIfAbsent(name, k -> new Operation());
+        long now = System.nanoTime();
+        operation.latency.recordNanos(now - startNanos);
+        Tracer.span(name, startNanos, now, -1);
+        (succeeded ? operation.succeeded : operation.failed).increment();
+    }
+
+    /** Wraps a file stream so the time spent in its writes can be told apart from encoding. */
+    public TimedOutputStream timeWrites(OutputStream out) {
+        return new TimedOutputStream(out);
+    }
+
+    /**
+     * Splits the time since {@code startNanos} into {@link Stage#WRITE}, the
+     * time spent inside {@code file}, and {@link Stage#ENCODE}, the rest.
+     */
+    public void recordEncode(long startNanos, TimedOutputStream file) {
+        long now = System.nanoTime();
+        recordNanos(Stage.ENCODE, now - startNanos - file.nanos, file.bytes);
+        recordNanos(Stage.WRITE, file.nanos, file.bytes);
+        Tracer.span("encode+write", startNanos, now, file.bytes);
+    }
+
+    public static final class TimedOutputStream extends FilterOutputStream {
+        private long nanos;
+        private long bytes;
+
+        TimedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            out.write(b);
+            nanos += System.nanoTime() - start;
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            out.write(b, off, len);
+            nanos += System.nanoTime() - start;
+            bytes += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = System.nanoTime();
+            out.flush();
+            nanos += System.nanoTime() - start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = System.nanoTime();
+            out.close();
+            nanos += System.nanoTime() - start;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stages = new HashMap<>();
+        for (Stage stage : Stage.values()) {
+            Map<String, Object> stats = latencies.get(stage).getStats();
+            stats.put("bytes", bytes.get(stage).sum());
+            stages.put(stage.key, stats);
+        }
+        Map<String, Object> ops = new HashMap<>();
+        for (Map.Entry<String, Operation> entry : operations.entrySet()) {
+            Operation operation = entry.getValue();
+            Map<String, Object> stats = operation.latency.getStats();
+            stats.put("succeeded", operation.succeeded.sum());
+            stats.put("failed", operation.failed.sum());
+            ops.put(entry.getKey(), stats);
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("stages", stages);
+        result.put("operations", ops);
+        return result;
+    }
+}
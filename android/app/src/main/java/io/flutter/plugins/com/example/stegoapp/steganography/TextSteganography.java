@@ -7,8 +7,6 @@ import android.net.Uri;
 import android.util.Log;
 
 import net.jpountz.lz4.LZ4Factory;
-import net.jpountz.lz4.LZ4FastDecompressor;
-import net.jpountz.lz4.LZ4Compressor;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -17,10 +15,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.CRC32;
 import java.io.*;
 
 
@@ -35,9 +33,6 @@ import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.util.Log;
 
-import net.jpountz.lz4.LZ4Factory;
-import net.jpountz.lz4.LZ4FastDecompressor;
-import net.jpountz.lz4.LZ4Compressor;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
@@ -47,236 +42,548 @@ import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
 
 
 public class TextSteganography {
     private static final String TAG = "TextSteganography";
     private final Context context;
-    public final ExecutorService executor;
-    public static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors() * 2;
-    public static final int LENGTH_BITS = 32;
-    private final LZ4Factory lz4Factory;
+    public final ForkJoinPool executor;
+    public static final int LENGTH_BITS = PixelEmbedder.LENGTH_BITS;
+    private final PayloadCodec payloadCodec;
+    private final PixelEmbedder embedder;
+    private final ParallelPngEncoder pngEncoder;
+    private final PixelCache pixelCache;
+    private final PixelBufferPool pixelPool;
+    private final StageMetrics metrics;
+    private volatile boolean partialDecodeEnabled = true;
 
-    public TextSteganography(Context context, ExecutorService executor, LZ4Factory lz4Factory) {
+    public TextSteganography(Context context, ForkJoinPool executor, LZ4Factory lz4Factory, TaskGranularity granularity,
+                             PixelCache pixelCache, PixelBufferPool pixelPool, StageMetrics metrics) {
         this.context = context;
+        this.metrics = metrics;
+        this.pixelCache = pixelCache;
+        this.pixelPool = pixelPool;
         this.executor = executor;
-        this.lz4Factory = lz4Factory;
+        this.payloadCodec = new PayloadCodec(lz4Factory);
+        this.embedder = new PixelEmbedder(executor, granularity);
+        this.pngEncoder = new ParallelPngEncoder(executor, executor.getParallelism(),
+                (start, end, rawBytes) -> Tracer.span("pngBand", start, end, rawBytes));
     }
 
     public String hideTextInImage(String text, String carrierUri) {
+        return hideTextInImage(text, carrierUri, HideOptions.defaults(), ProgressListener.NONE);
+    }
+
+    public String hideTextInImage(String text, String carrierUri, HideOptions hideOptions, ProgressListener listener) {
         long startTime = System.nanoTime();
+        boolean succeeded = false;
         try {
-            String result = hideInImage(text, carrierUri);
-            Log.d(TAG, "Hide operation took: " + (System.nanoTime() - startTime) / 1_000_000 + "ms");
+            String result = hideInImage(text, carrierUri, hideOptions, listener);
+            succeeded = true;
             return result;
         } catch (Exception e) {
             Log.e(TAG, "Error hiding text", e);
             return "Error: " + e.getMessage();
+        } finally {
+            metrics.recordOperation("hideTextInImage", startTime, succeeded);
         }
     }
 
     public String extractTextFromImage(String carrierUri) {
+        return extractTextFromImage(carrierUri, ProgressListener.NONE);
+    }
+
+    public String extractTextFromImage(String carrierUri, ProgressListener listener) {
         long startTime = System.nanoTime();
+        boolean succeeded = false;
         try {
-            String result = extractFromImage(carrierUri);
-            Log.d(TAG, "Extract operation took: " + (System.nanoTime() - startTime) / 1_000_000 + "ms");
+            String result = extractFromImage(carrierUri, listener);
+            succeeded = true;
             return result;
         } catch (Exception e) {
             Log.e(TAG, "Error extracting text", e);
             return "Error: " + e.getMessage();
+        } finally {
+            metrics.recordOperation("extractTextFromImage", startTime, succeeded);
         }
     }
 
-    private String hideInImage(String text, String carrierUri) throws IOException {
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-        options.inMutable = true;
-        options.inSampleSize = 1;
-        options.inJustDecodeBounds = false;
-        
-        Bitmap carrierBitmap = loadBitmap(carrierUri);
-        
-        if (carrierBitmap == null) {
-            throw new IOException("Failed to decode image from: " + carrierUri);
-        }
-        
-        int width = carrierBitmap.getWidth();
-        int height = carrierBitmap.getHeight();
-        int pixelCount = width * height;
-        
+    private String hideInImage(String text, String carrierUri, HideOptions hideOptions, ProgressListener listener) throws IOException {
         byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
-        byte[] dataToHide = ultraCompress(textBytes);
-        int dataLength = dataToHide.length;
-        
-        Log.d(TAG, "Hiding data with compression flag: " + (dataToHide[0] & 0xFF) + 
-              ", total length: " + dataLength);
+        byte[] dataToHide = ultraCompress(textBytes, hideOptions);
+        return hidePayloadInImage(dataToHide, carrierUri, hideOptions, listener);
+    }
 
-        int bitsAvailable = (pixelCount - LENGTH_BITS) * 3; 
-        if (dataLength * 8 > bitsAvailable) {
-            carrierBitmap.recycle();
-            throw new IOException("Image too small for data. Need at least " + 
-                              ((dataLength * 8 / 3) + LENGTH_BITS) + " pixels, but have " + pixelCount);
+    /** Hides an already compressed payload; lets batch callers compress a shared payload once. */
+    public String hidePayloadInImage(byte[] dataToHide, String carrierUri, HideOptions hideOptions, ProgressListener listener) throws IOException {
+        int dataLength = dataToHide.length;
+        LsbLayout layout = hideOptions.getLayout();
+        
+        String cacheKey = pixelCache.keyFor(carrierUri);
+        PixelCache.Entry carrier = pixelCache.get(cacheKey);
+        if (carrier == null) {
+            int[] bounds = readImageBounds(carrierUri);
+            checkImageCapacity(bounds[0], bounds[1], dataLength, layout);
+            if ((long) bounds[0] * bounds[1] >= TiledCarrier.MIN_TILED_PIXELS) {
+                String outputPath = hideTiled(dataToHide, carrierUri, hideOptions, listener);
+                if (outputPath != null) {
+                    return outputPath;
+                }
+            }
+            if (hideOptions.isInPlace()) {
+                return hideInPlace(dataToHide, carrierUri, bounds, hideOptions, listener);
+            }
+            carrier = decodeCarrier(carrierUri, cacheKey, bounds);
         }
         
-        ByteBuffer pixelBuffer = ByteBuffer.allocateDirect(pixelCount * 4);
-        pixelBuffer.order(ByteOrder.nativeOrder());
-        carrierBitmap.copyPixelsToBuffer(pixelBuffer);
-        carrierBitmap.recycle();
-        pixelBuffer.rewind();
-        
-        Log.d(TAG, "Embedding data length: " + dataLength + " in pixels 0-" + (LENGTH_BITS-1));
-        for (int i = 0; i < LENGTH_BITS; i++) {
-            int pos = i * 4;
-            byte r = pixelBuffer.get(pos + 2); 
-            r = (byte)((r & 0xFE) | ((dataLength >> i) & 1));
-            pixelBuffer.put(pos + 2, r);
+        int width = carrier.width;
+        int height = carrier.height;
+        try {
+            listener.onProgress("decode", 1, 1);
+            listener.throwIfCancelled();
+            
+            checkImageCapacity(width, height, dataLength, layout);
+        } catch (IOException | RuntimeException e) {
+            carrier.release();
+            throw e;
         }
         
-        int dataBits = dataLength * 8;
-        int bitsPerThread = (dataBits + THREAD_COUNT - 1) / THREAD_COUNT;
-        CountDownLatch latch = new CountDownLatch(THREAD_COUNT);
-        
-        for (int t = 0; t < THREAD_COUNT; t++) {
-            final int threadIdx = t;
-            final int startBit = t * bitsPerThread;
-            final int endBit = Math.min((t + 1) * bitsPerThread, dataBits);
+        ByteBuffer pixelBuffer = carrier.detachPixels();
+        try {
+            long embedStart = System.nanoTime();
+            embedder.embedPayload(pixelBuffer, dataToHide, layout);
+            metrics.record(StageMetrics.Stage.EMBED, embedStart, dataLength);
             
-            executor.execute(() -> {
+            listener.onProgress("embed", dataLength, dataLength);
+            listener.throwIfCancelled();
+            
+            String outputPath = encodePng(ParallelPngEncoder.fromPixelBuffer(pixelBuffer, width, height, false),
+                    hideOptions.getPngLevel());
+            
+            verifyOutput(outputPath, pixelBuffer, width, height, dataToHide, layout, hideOptions.getVerification());
+            listener.onProgress("encode", 1, 1);
+            
+            return outputPath;
+        } finally {
+            pixelPool.release(pixelBuffer);
+        }
+    }
+
+    private String extractFromImage(String carrierUri, ProgressListener listener) throws IOException {
+        byte[] extractedData = readPayload(carrierUri, listener);
+        
+        try {
+            byte[] decompressed = ultraDecompress(extractedData);
+            return new String(decompressed, StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to decompress data. First byte: " + (extractedData[0] & 0xFF));
+            throw new IOException("Failed to decompress data: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the raw (still compressed) payload of a stego image. Pixels
+     * already in the pixel cache are used as-is. Otherwise, with partial
+     * decoding enabled only the rows holding the length header and the
+     * payload are decoded, a tile at a time; carriers the region decoder
+     * cannot handle fall back to a full decode, which is cached.
+     */
+    public byte[] readPayload(String carrierUri, ProgressListener listener) throws IOException {
+        String cacheKey = pixelCache.keyFor(carrierUri);
+        PixelCache.Entry cached = pixelCache.get(cacheKey);
+        if (cached != null) {
+            try {
+                listener.onProgress("decode", 1, 1);
+                return readPayloadPixels(cached, listener);
+            } finally {
+                cached.release();
+            }
+        }
+        if (partialDecodeEnabled) {
+            RegionPixelReader reader = null;
+            try {
+                reader = RegionPixelReader.open(context, carrierUri);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Partial decode unavailable, decoding full image: " + e.getMessage());
+            }
+            if (reader != null) {
                 try {
-                    embedDataParallel(pixelBuffer, dataToHide, LENGTH_BITS, startBit, endBit);
-                    Log.d(TAG, "Thread " + threadIdx + " completed embedding bits " + startBit + " to " + endBit);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error in thread " + threadIdx, e);
+                    return readPayloadRows(reader, listener);
                 } finally {
-                    latch.countDown();
+                    reader.close();
                 }
-            });
+            }
         }
-        
+        PixelCache.Entry carrier = decodeCarrier(carrierUri, cacheKey, readImageBounds(carrierUri));
         try {
-            if (!latch.await(10, TimeUnit.SECONDS)) {
-                Log.w(TAG, "Embedding timed out, some threads did not complete");
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            listener.onProgress("decode", 1, 1);
+            return readPayloadPixels(carrier, listener);
+        } finally {
+            carrier.release();
         }
-        
-        pixelBuffer.rewind();
-        
-        byte[] verification = new byte[1];
-        extractDataSingleThread(pixelBuffer, verification, LENGTH_BITS, 0, 8);
-        
-        Log.d(TAG, "Verification - Original: " + (dataToHide[0] & 0xFF) + 
-              ", Extracted: " + (verification[0] & 0xFF));
-              
-        if ((verification[0] & 0xFF) != (dataToHide[0] & 0xFF)) {
-            throw new IOException("Embedding verification failed - first byte mismatch. " +
-                            "Original: " + (dataToHide[0] & 0xFF) + 
-                            ", Extracted: " + (verification[0] & 0xFF));
+    }
+
+    /**
+     * Streams the payload of a stego image through the decompressor into
+     * {@code sink}, choosing pixels the same way as {@link #readPayload}.
+     * Neither the raw nor the decoded payload is held whole: region-decoded
+     * carriers are read a tile at a time and fully decoded ones a chunk at
+     * a time, so memory is bounded by the carrier, not the payload.
+     */
+    public PayloadCodec.Streamed extractPayloadTo(String carrierUri, OutputStream sink, ProgressListener listener) throws IOException {
+        String cacheKey = pixelCache.keyFor(carrierUri);
+        PixelCache.Entry cached = pixelCache.get(cacheKey);
+        if (cached != null) {
+            try {
+                listener.onProgress("decode", 1, 1);
+                return streamPayloadPixels(cached, sink, listener);
+            } finally {
+                cached.release();
+            }
         }
-        
-        pixelBuffer.rewind();
-        Bitmap resultBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        resultBitmap.copyPixelsFromBuffer(pixelBuffer);
-        
-        String outputPath = createTempFile("png");
-        try (FileOutputStream fos = new FileOutputStream(outputPath)) {
-            if (!resultBitmap.compress(Bitmap.CompressFormat.PNG, 100, fos)) {
-                throw new IOException("Failed to compress bitmap");
+        if (partialDecodeEnabled) {
+            RegionPixelReader reader = null;
+            try {
+                reader = RegionPixelReader.open(context, carrierUri);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Partial decode unavailable, decoding full image: " + e.getMessage());
+            }
+            if (reader != null) {
+                try {
+                    return streamPayloadRows(reader, sink, listener);
+                } finally {
+                    reader.close();
+                }
             }
-            fos.flush();
         }
-        
-        Bitmap saved = BitmapFactory.decodeFile(outputPath);
-        if (saved == null || saved.getWidth() != width || saved.getHeight() != height) {
-            throw new IOException("Image dimensions changed after saving");
+        PixelCache.Entry carrier = decodeCarrier(carrierUri, cacheKey, readImageBounds(carrierUri));
+        try {
+            listener.onProgress("decode", 1, 1);
+            return streamPayloadPixels(carrier, sink, listener);
+        } finally {
+            carrier.release();
         }
-        saved.recycle();
-        resultBitmap.recycle();
-        
-        return outputPath;
     }
 
-    private String extractFromImage(String carrierUri) throws IOException {
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
-        options.inSampleSize = 1;
-        
-        Bitmap carrierBitmap = loadBitmap(carrierUri);
-        
-        if (carrierBitmap == null) {
-            throw new IOException("Failed to decode image from: " + carrierUri);
+    private PayloadCodec.Streamed streamPayloadRows(RegionPixelReader reader, OutputStream sink,
+                                                    ProgressListener listener) throws IOException {
+        TiledCarrier tiled = new TiledCarrier(reader);
+        int pixelCount = tiled.getWidth() * tiled.getHeight();
+        if (pixelCount < LENGTH_BITS + 10) {
+            throw new IOException("Image too small to contain steganographic data");
         }
-        
-        int width = carrierBitmap.getWidth();
-        int height = carrierBitmap.getHeight();
-        int pixelCount = width * height;
-        
-        ByteBuffer pixelBuffer = ByteBuffer.allocateDirect(pixelCount * 4);
-        pixelBuffer.order(ByteOrder.nativeOrder());
-        carrierBitmap.copyPixelsToBuffer(pixelBuffer);
-        carrierBitmap.recycle();
-        pixelBuffer.rewind();
-        
-        int dataLength = 0;
-        for (int i = 0; i < LENGTH_BITS; i++) {
-            int pos = i * 4;
-            byte r = pixelBuffer.get(pos + 2);
-            int bit = r & 1;
-            dataLength |= (bit << i);
+        int header = tiled.readHeader();
+        LsbLayout layout = LsbLayout.fromHeader(header);
+        int dataLength = LsbLayout.lengthFromHeader(header);
+        validateDataLength(dataLength, pixelCount, layout);
+        listener.onProgress("decode", 1, 1);
+        return decodeTo(tiled.openPayloadStream(dataLength, layout, listener), sink);
+    }
+
+    private PayloadCodec.Streamed streamPayloadPixels(PixelCache.Entry carrier, OutputStream sink,
+                                                      ProgressListener listener) throws IOException {
+        listener.throwIfCancelled();
+        int pixelCount = carrier.width * carrier.height;
+        ByteBuffer pixelBuffer = carrier.pixels();
+        if (pixelCount < LENGTH_BITS + 10) {
+            throw new IOException("Image too small to contain steganographic data");
         }
+        int header = embedder.readHeader(pixelBuffer);
+        LsbLayout layout = LsbLayout.fromHeader(header);
+        int dataLength = LsbLayout.lengthFromHeader(header);
+        validateDataLength(dataLength, pixelCount, layout);
+        PayloadCodec.Streamed streamed = decodeTo(embedder.openPayloadStream(pixelBuffer, dataLength, layout), sink);
+        listener.onProgress("extract", dataLength, dataLength);
+        return streamed;
+    }
 
-        Log.d(TAG, "Extracted data length: " + dataLength + " from image with " + pixelCount + " pixels");
+    private PayloadCodec.Streamed decodeTo(InputStream payload, OutputStream sink) throws IOException {
+        long start = System.nanoTime();
+        PayloadCodec.Streamed streamed = payloadCodec.decodeImagePayloadTo(payload, sink);
+        // Extraction runs inside the decompressor's reads, so both are timed together.
+        metrics.record(StageMetrics.Stage.DECOMPRESS, start, streamed.length);
+        return streamed;
+    }
 
-        int maxPossibleLength = (pixelCount - LENGTH_BITS) * 3 / 8;
-        if (dataLength <= 0 || dataLength > maxPossibleLength) {
-            throw new IOException("Invalid data length detected: " + dataLength + 
-                              ". This image may not contain valid steganographic data. Max possible: " + maxPossibleLength);
+    private byte[] readPayloadRows(RegionPixelReader reader, ProgressListener listener) throws IOException {
+        TiledCarrier tiled = new TiledCarrier(reader);
+        int pixelCount = tiled.getWidth() * tiled.getHeight();
+        if (pixelCount < LENGTH_BITS + 10) {
+            throw new IOException("Image too small to contain steganographic data");
         }
         
+        long start = System.nanoTime();
+        int header = tiled.readHeader();
+        start = metrics.record(StageMetrics.Stage.DECODE, start, 0);
+        LsbLayout layout = LsbLayout.fromHeader(header);
+        int dataLength = LsbLayout.lengthFromHeader(header);
+        validateDataLength(dataLength, pixelCount, layout);
+        listener.onProgress("decode", 1, 1);
+        listener.throwIfCancelled();
+        
+        byte[] extractedData = tiled.extract(dataLength, layout, listener);
+        metrics.record(StageMetrics.Stage.EXTRACT, start, dataLength);
+        listener.onProgress("extract", dataLength, dataLength);
+        listener.throwIfCancelled();
+        return extractedData;
+    }
+
+    private byte[] readPayloadPixels(PixelCache.Entry carrier, ProgressListener listener) throws IOException {
+        listener.throwIfCancelled();
+        int pixelCount = carrier.width * carrier.height;
+        ByteBuffer pixelBuffer = carrier.pixels();
+        
         if (pixelCount < LENGTH_BITS + 10) {
             throw new IOException("Image too small to contain steganographic data");
         }
+        int header = embedder.readHeader(pixelBuffer);
+        LsbLayout layout = LsbLayout.fromHeader(header);
+        int dataLength = LsbLayout.lengthFromHeader(header);
+        validateDataLength(dataLength, pixelCount, layout);
         
+        long start = System.nanoTime();
         byte[] extractedData = new byte[dataLength];
-        int dataBits = dataLength * 8;
-        int bitsPerThread = (dataBits + THREAD_COUNT - 1) / THREAD_COUNT;
-        CountDownLatch latch = new CountDownLatch(THREAD_COUNT);
-        
-        for (int t = 0; t < THREAD_COUNT; t++) {
-            final int threadIdx = t;
-            final int startBit = t * bitsPerThread;
-            final int endBit = Math.min((t + 1) * bitsPerThread, dataBits);
+        embedder.extractPayload(pixelBuffer, extractedData, layout);
+        metrics.record(StageMetrics.Stage.EXTRACT, start, dataLength);
+        listener.onProgress("extract", dataLength, dataLength);
+        listener.throwIfCancelled();
+        return extractedData;
+    }
+
+    private void validateDataLength(int dataLength, int pixelCount, LsbLayout layout) throws IOException {
+        long maxPossibleLength = layout.capacity(pixelCount, LENGTH_BITS);
+        if (dataLength <= 0 || dataLength > maxPossibleLength) {
+            throw new IOException("Invalid data length detected: " + dataLength + 
+                              ". This image may not contain valid steganographic data. Max possible: " + maxPossibleLength);
+        }
+    }
+
+    /**
+     * Hides into the decoded carrier bitmap itself: only the rows the payload
+     * covers are read and written back, a band at a time, and the PNG is
+     * encoded straight from the bitmap.
+     */
+    private String hideInPlace(byte[] dataToHide, String carrierUri, int[] bounds, HideOptions hideOptions,
+                               ProgressListener listener) throws IOException {
+        long start = System.nanoTime();
+        Bitmap carrierBitmap = decodePooledBitmap(carrierUri, bounds);
+        metrics.record(StageMetrics.Stage.DECODE, start, (long) bounds[0] * bounds[1] * 4);
+        LsbLayout layout = hideOptions.getLayout();
+        try {
+            listener.onProgress("decode", 1, 1);
+            listener.throwIfCancelled();
+            checkImageCapacity(carrierBitmap.getWidth(), carrierBitmap.getHeight(), dataToHide.length, layout);
             
-            executor.execute(() -> {
-                try {
-                    extractDataParallel(pixelBuffer, extractedData, LENGTH_BITS, startBit, endBit);
-                    Log.d(TAG, "Thread " + threadIdx + " completed extracting bits " + startBit + " to " + endBit);
-                } catch (Exception e) {
-                    Log.e(TAG, "Error in thread " + threadIdx, e);
-                } finally {
-                    latch.countDown();
-                }
-            });
+            start = System.nanoTime();
+            embedInBitmap(carrierBitmap, dataToHide, layout);
+            metrics.record(StageMetrics.Stage.EMBED, start, dataToHide.length);
+            listener.onProgress("embed", dataToHide.length, dataToHide.length);
+            listener.throwIfCancelled();
+            
+            String outputPath = encodePng(new BitmapRowSource(carrierBitmap), hideOptions.getPngLevel());
+            verifyOutput(outputPath, carrierBitmap, dataToHide, layout, hideOptions.getVerification());
+            listener.onProgress("encode", 1, 1);
+            return outputPath;
+        } finally {
+            pixelPool.releaseBitmap(carrierBitmap);
+        }
+    }
+
+    /**
+     * Hides into a very large carrier without ever holding the whole frame:
+     * tiles are region-decoded, embedded and handed to the PNG encoder as it
+     * needs them. Returns null if the carrier's format has no region decoder.
+     */
+    private String hideTiled(byte[] dataToHide, String carrierUri, HideOptions hideOptions,
+                             ProgressListener listener) throws IOException {
+        RegionPixelReader reader;
+        try {
+            reader = RegionPixelReader.open(context, carrierUri);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Tiled hide unavailable, decoding full image: " + e.getMessage());
+            return null;
         }
-        
         try {
-            if (!latch.await(10, TimeUnit.SECONDS)) {
-                Log.w(TAG, "Extraction timed out, some threads did not complete");
+            LsbLayout layout = hideOptions.getLayout();
+            TiledCarrier.EmbedSource source = new TiledCarrier(reader).embed(dataToHide, layout);
+            listener.throwIfCancelled();
+            
+            String outputPath = encodePng(source, hideOptions.getPngLevel());
+            listener.onProgress("embed", dataToHide.length, dataToHide.length);
+            verifyOutput(outputPath, source.getWidth(), source.getHeight(), source::readArgbRows,
+                    dataToHide, layout, hideOptions.getVerification());
+            listener.onProgress("encode", 1, 1);
+            return outputPath;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static final int EMBED_BAND_PIXELS = 64 * 1024;
+
+    /**
+     * Writes the header and payload into an ARGB_8888 bitmap through one
+     * reused {@code getPixels}/{@code setPixels} band. Bands are cut on
+     * group boundaries, so a row shared by two bands is read back with the
+     * first band's bits already in it.
+     */
+    void embedInBitmap(Bitmap bitmap, byte[] data, LsbLayout layout) {
+        int width = bitmap.getWidth();
+        PixelCodec codec = PixelCodec.forArgbInts(layout);
+        int groupPixels = codec.pixelsPerGroup();
+        int groupBytes = codec.bytesPerGroup();
+        int groups = (data.length + groupBytes - 1) / groupBytes;
+        int bandGroups = Math.max(1, EMBED_BAND_PIXELS / groupPixels);
+        int[] band = new int[0];
+        for (int fromGroup = 0; fromGroup < groups; fromGroup += bandGroups) {
+            int toGroup = Math.min(groups, fromGroup + bandGroups);
+            int fromByte = fromGroup * groupBytes;
+            int toByte = Math.min(data.length, toGroup * groupBytes);
+            int firstPixel = fromGroup == 0 ? 0 : LENGTH_BITS + fromGroup * groupPixels;
+            int endPixel = LENGTH_BITS + fromGroup * groupPixels + codec.pixelsForBytes(toByte - fromByte);
+            int top = firstPixel / width;
+            int rows = (endPixel + width - 1) / width - top;
+            if (band.length < rows * width) {
+                band = new int[rows * width];
+            }
+            bitmap.getPixels(band, 0, width, 0, top, width, rows);
+            IntBuffer pixels = IntBuffer.wrap(band);
+            if (fromGroup == 0) {
+                codec.writeHeader(pixels, layout.headerValue(data.length), LENGTH_BITS);
             }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            codec.embed(pixels, LENGTH_BITS - top * width, data, fromByte, toByte);
+            bitmap.setPixels(band, 0, width, 0, top, width, rows);
         }
+    }
+
+    /**
+     * Fully decodes a carrier of the given bounds to non-premultiplied
+     * ARGB_8888 pixels in a pooled buffer, reusing an idle pooled bitmap as the decode target, and
+     * offers them to the pixel cache under {@code cacheKey} (null if the
+     * carrier is not cacheable). The caller holds a reference to the result.
+     */
+    private PixelCache.Entry decodeCarrier(String carrierUri, String cacheKey, int[] bounds) throws IOException {
+        long start = System.nanoTime();
+        Bitmap carrierBitmap = decodePooledBitmap(carrierUri, bounds);
+        
+        int width = carrierBitmap.getWidth();
+        int height = carrierBitmap.getHeight();
+        start = metrics.record(StageMetrics.Stage.DECODE, start, width * height * 4L);
         
+        ByteBuffer pixelBuffer;
         try {
-            byte[] decompressed = ultraDecompress(extractedData);
-            return new String(decompressed, StandardCharsets.UTF_8);
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to decompress data. First byte: " + (extractedData[0] & 0xFF));
-            throw new IOException("Failed to decompress data: " + e.getMessage());
+            pixelBuffer = pixelPool.acquire(width * height * 4);
+        } catch (IllegalStateException e) {
+            pixelPool.releaseBitmap(carrierBitmap);
+            throw e;
+        }
+        carrierBitmap.copyPixelsToBuffer(pixelBuffer);
+        pixelPool.releaseBitmap(carrierBitmap);
+        metrics.record(StageMetrics.Stage.COPY, start, width * height * 4L);
+        pixelBuffer.rewind();
+        
+        PixelCache.Entry carrier = new PixelCache.Entry(pixelPool, pixelBuffer, width, height);
+        pixelCache.put(cacheKey, carrier);
+        return carrier;
+    }
+
+    /**
+     * Decodes a carrier of the given bounds into a mutable ARGB_8888 bitmap,
+     * reusing an idle pooled bitmap as the target when one fits. Hand the
+     * result back with {@link PixelBufferPool#releaseBitmap}. Colours are
+     * not premultiplied, so translucent pixels keep every payload bit,
+     * alpha included.
+     */
+    private Bitmap decodePooledBitmap(String carrierUri, int[] bounds) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        options.inPremultiplied = false;
+        options.inBitmap = pixelPool.acquireBitmap(bounds[0], bounds[1]);
+        Bitmap bitmap;
+        try {
+            bitmap = decodeBitmap(carrierUri, options);
+        } catch (IllegalArgumentException e) {
+            // The decoder rejected the pooled bitmap; decode into a fresh one.
+            pixelPool.releaseBitmap(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = decodeBitmap(carrierUri, options);
+        }
+        if (options.inBitmap != null && bitmap != options.inBitmap) {
+            pixelPool.releaseBitmap(options.inBitmap);
+        }
+        if (bitmap == null) {
+            throw new IOException("Failed to decode image from: " + carrierUri);
+        }
+        return bitmap;
+    }
+
+    private Bitmap decodeBitmap(String uriString, BitmapFactory.Options options) throws IOException {
+        if (uriString.startsWith("content://")) {
+            try (InputStream inputStream = context.getContentResolver().openInputStream(Uri.parse(uriString))) {
+                return BitmapFactory.decodeStream(inputStream, null, options);
+            }
+        }
+        return BitmapFactory.decodeFile(uriString, options);
+    }
+
+    public PixelCache getPixelCache() {
+        return pixelCache;
+    }
+
+    public PixelBufferPool getPixelPool() {
+        return pixelPool;
+    }
+
+    public void setPartialDecodeEnabled(boolean enabled) {
+        this.partialDecodeEnabled = enabled;
+    }
+
+    public StageMetrics getMetrics() {
+        return metrics;
+    }
+
+    public PixelEmbedder getEmbedder() {
+        return embedder;
+    }
+
+    /**
+     * Width and height of an image from a bounds-only decode, which reads
+     * the header but allocates no pixels.
+     */
+    public int[] readImageBounds(String uriString) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        if (uriString.startsWith("content://")) {
+            try (InputStream inputStream = context.getContentResolver().openInputStream(Uri.parse(uriString))) {
+                BitmapFactory.decodeStream(inputStream, null, options);
+            }
+        } else {
+            BitmapFactory.decodeFile(uriString, options);
+        }
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Failed to read image bounds from: " + uriString);
+        }
+        return new int[]{options.outWidth, options.outHeight};
+    }
+
+    /** Largest payload (after compression) a carrier of this size can hold. */
+    public static long imageCapacity(int width, int height) {
+        return PixelEmbedder.capacity(width, height);
+    }
+
+    public static long imageCapacity(int width, int height, LsbLayout layout) {
+        return PixelEmbedder.capacity(width, height, layout);
+    }
+
+    public static void checkImageCapacity(int width, int height, int dataLength) throws IOException {
+        checkImageCapacity(width, height, dataLength, LsbLayout.DEFAULT);
+    }
+
+    public static void checkImageCapacity(int width, int height, int dataLength, LsbLayout layout) throws IOException {
+        if (dataLength > imageCapacity(width, height, layout)) {
+            throw new IOException("Image too small for data. Need at least " +
+                              (layout.pixelsFor(dataLength) + LENGTH_BITS) + " pixels, but have " + ((long) width * height));
         }
     }
 
@@ -299,175 +606,198 @@ public class TextSteganography {
         }
     }
 
-    public void embedDataParallel(ByteBuffer buffer, byte[] data, int startPixelIdx, int startBit, int endBit) {
-        for (int bitIdx = startBit; bitIdx < endBit; bitIdx++) {
-            int bytePos = bitIdx / 8;
-            if (bytePos >= data.length) break;
-            
-            int bitInByte = bitIdx % 8;
-            int bitValue = (data[bytePos] >> bitInByte) & 1;
-            
-            int pixelOffset = startPixelIdx + (bitIdx / 3);
-            int channel = bitIdx % 3;
-            int bufferPos = pixelOffset * 4;
-            
-            switch (channel) {
-                case 0: 
-                    byte r = buffer.get(bufferPos + 2);
-                    r = (byte)((r & 0xFE) | bitValue);
-                    buffer.put(bufferPos + 2, r);
-                    break;
-                case 1: 
-                    byte g = buffer.get(bufferPos + 1);
-                    g = (byte)((g & 0xFE) | bitValue);
-                    buffer.put(bufferPos + 1, g);
-                    break;
-                case 2:
-                    byte b = buffer.get(bufferPos);
-                    b = (byte)((b & 0xFE) | bitValue);
-                    buffer.put(bufferPos, b);
-                    break;
-            }
+    public byte[] ultraCompress(byte[] data) {
+        return ultraCompress(data, HideOptions.defaults());
+    }
+
+    public byte[] ultraCompress(byte[] data, HideOptions hideOptions) {
+        long start = System.nanoTime();
+        byte[] encoded = payloadCodec.encode(data, null, hideOptions.getCompression(), hideOptions.getCompressionBudgetMs());
+        metrics.record(StageMetrics.Stage.COMPRESS, start, data.length);
+        return encoded;
+    }
+
+    /** Like {@link #ultraDecompress} but keeps the MIME type of version 2 containers. */
+    public PayloadCodec.Decoded decodePayload(byte[] data) throws IOException {
+        if (PayloadCodec.isContainer(data)) {
+            long start = System.nanoTime();
+            PayloadCodec.Decoded decoded = payloadCodec.decodePayload(data);
+            metrics.record(StageMetrics.Stage.DECOMPRESS, start, decoded.data.length);
+            return decoded;
+        }
+        try {
+            return new PayloadCodec.Decoded(ultraDecompress(data), null);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
         }
     }
 
-    private void extractDataSingleThread(ByteBuffer buffer, byte[] output, int startPixelIdx, int startBit, int endBit) {
-        for (int bitIdx = startBit; bitIdx < endBit; bitIdx++) {
-            int outputBytePos = bitIdx / 8;
-            if (outputBytePos >= output.length) break;
-            
-            int bitInByte = bitIdx % 8;
-            
-            int pixelOffset = startPixelIdx + (bitIdx / 3);
-            int channel = bitIdx % 3;
-            int bufferPos = pixelOffset * 4;
-
-            int bitValue = 0;
-            switch (channel) {
-                case 0:
-                    bitValue = buffer.get(bufferPos + 2) & 1;
-                    break;
-                case 1: 
-                    bitValue = buffer.get(bufferPos + 1) & 1;
-                    break;
-                case 2: 
-                    bitValue = buffer.get(bufferPos) & 1;
-                    break;
+    public PayloadCodec getPayloadCodec() {
+        return payloadCodec;
+    }
+
+    /**
+     * Decodes a {@link PayloadCodec} container, or one of the older flag-byte
+     * formats written before it existed.
+     */
+    public byte[] ultraDecompress(byte[] data) {
+        long start = System.nanoTime();
+        byte[] decoded = payloadCodec.decodeImagePayload(data);
+        metrics.record(StageMetrics.Stage.DECOMPRESS, start, decoded.length);
+        return decoded;
+    }
+
+    /**
+     * Checks a freshly written stego PNG at the requested level. The sampled
+     * level works on the in-memory pixels that were encoded; only FULL goes
+     * back to the file and decodes it again.
+     */
+    public void verifyOutput(String outputPath, ByteBuffer pixelBuffer, int width, int height,
+                             byte[] dataToHide, LsbLayout layout, VerificationLevel level) throws IOException {
+        IntBuffer pixels = PixelCodec.pixels(pixelBuffer);
+        PixelCodec codec = PixelCodec.forBuffer(pixelBuffer, layout);
+        verifyOutput(outputPath, width, height, dataToHide, codec, level, new GroupSource() {
+            @Override
+            public int header() {
+                return codec.readHeader(pixels, LENGTH_BITS);
             }
-            
-            if (bitValue == 1) {
-                output[outputBytePos] |= (1 << bitInByte);
-            } else {
-                output[outputBytePos] &= ~(1 << bitInByte);
+
+            @Override
+            public void group(int group, byte[] dst) {
+                codec.extractGroup(pixels, LENGTH_BITS, group, dst);
             }
-        }
+        });
     }
 
-    public void extractDataParallel(ByteBuffer buffer, byte[] output, int startPixelIdx, int startBit, int endBit) {
-        for (int bitIdx = startBit; bitIdx < endBit; bitIdx++) {
-            int outputBytePos = bitIdx / 8;
-            if (outputBytePos >= output.length) break;
-            
-            int bitInByte = bitIdx % 8;
-            
-            int pixelOffset = startPixelIdx + (bitIdx / 3);
-            int channel = bitIdx % 3;
-            int bufferPos = pixelOffset * 4;
-            
-            int bitValue = 0;
-            switch (channel) {
-                case 0: 
-                    bitValue = buffer.get(bufferPos + 2) & 1;
-                    break;
-                case 1:
-                    bitValue = buffer.get(bufferPos + 1) & 1;
-                    break;
-                case 2: 
-                    bitValue = buffer.get(bufferPos) & 1;
-                    break;
+    /** {@link #verifyOutput} for a hide that embedded into the carrier bitmap. */
+    private void verifyOutput(String outputPath, Bitmap bitmap, byte[] dataToHide, LsbLayout layout,
+                              VerificationLevel level) throws IOException {
+        int width = bitmap.getWidth();
+        verifyOutput(outputPath, width, bitmap.getHeight(),
+                (y, rows, dst) -> bitmap.getPixels(dst, 0, width, 0, y, width, rows), dataToHide, layout, level);
+    }
+
+    /** {@link #verifyOutput} for pixels that are read back as ARGB rows. */
+    private void verifyOutput(String outputPath, int width, int height, ArgbRows source, byte[] dataToHide,
+                              LsbLayout layout, VerificationLevel level) throws IOException {
+        PixelCodec codec = PixelCodec.forArgbInts(layout);
+        int groupPixels = codec.pixelsPerGroup();
+        verifyOutput(outputPath, width, height, dataToHide, codec, level, new GroupSource() {
+            @Override
+            public int header() throws IOException {
+                int rows = (LENGTH_BITS + width - 1) / width;
+                int[] band = new int[rows * width];
+                source.read(0, rows, band);
+                return codec.readHeader(IntBuffer.wrap(band), LENGTH_BITS);
             }
-            
-            synchronized (output) {
-                if (bitValue == 1) {
-                    output[outputBytePos] |= (1 << bitInByte);
-                } else {
-                    output[outputBytePos] &= ~(1 << bitInByte);
-                }
+
+            @Override
+            public void group(int group, byte[] dst) throws IOException {
+                int firstPixel = LENGTH_BITS + group * groupPixels;
+                int top = firstPixel / width;
+                int rows = (firstPixel + groupPixels + width - 1) / width - top;
+                int[] band = new int[rows * width];
+                source.read(top, rows, band);
+                codec.extractGroup(IntBuffer.wrap(band), LENGTH_BITS - top * width, group, dst);
             }
-        }
+        });
     }
 
-    public byte[] ultraCompress(byte[] data) {
-        if (data.length < 512) {
-            byte[] result = new byte[data.length + 5];
-            result[0] = 0; 
-            ByteBuffer.wrap(result, 1, 4).putInt(data.length);
-            System.arraycopy(data, 0, result, 5, data.length);
-            return result;
+    /** Copies rows {@code [y, y + rows)} of an image as {@code 0xAARRGGBB} ints. */
+    private interface ArgbRows {
+        void read(int y, int rows, int[] dst) throws IOException;
+    }
+
+    /** Reads back the embedded header and payload groups for sampled verification. */
+    private interface GroupSource {
+        int header() throws IOException;
+
+        /** Fills {@code dst} with the group's {@link PixelCodec#bytesPerGroup()} bytes. */
+        void group(int group, byte[] dst) throws IOException;
+    }
+
+    private void verifyOutput(String outputPath, int width, int height, byte[] dataToHide, PixelCodec codec,
+                              VerificationLevel level, GroupSource source) throws IOException {
+        if (level == VerificationLevel.NONE) {
+            return;
         }
-        
-        LZ4Compressor compressor = lz4Factory.fastCompressor();
-        int maxCompressedSize = compressor.maxCompressedLength(data.length);
-        byte[] compressed = new byte[maxCompressedSize];
-        int compressedLength = compressor.compress(data, 0, data.length, compressed, 0, maxCompressedSize);
-
-        if (compressedLength >= data.length) {
-            byte[] result = new byte[data.length + 5];
-            result[0] = 0; 
-            ByteBuffer.wrap(result, 1, 4).putInt(data.length);
-            System.arraycopy(data, 0, result, 5, data.length);
-            return result;
+        long start = System.nanoTime();
+        int[] dimensions = readPngDimensions(outputPath);
+        if (dimensions[0] != width || dimensions[1] != height) {
+            throw new IOException("Image dimensions changed after saving");
         }
-        
-        byte[] result = new byte[compressedLength + 9];
-        result[0] = 1; 
-        ByteBuffer headerBuffer = ByteBuffer.wrap(result, 1, 8);
-        headerBuffer.putInt(data.length);      
-        headerBuffer.putInt(compressedLength); 
-        System.arraycopy(compressed, 0, result, 9, compressedLength);
-        
-        return result;
+        if (level == VerificationLevel.SAMPLED) {
+            verifySampledGroups(source, dataToHide, codec);
+        } else if (level == VerificationLevel.FULL) {
+            byte[] roundTrip = readPayload(outputPath, ProgressListener.NONE);
+            if (roundTrip.length != dataToHide.length || crc32(roundTrip) != crc32(dataToHide)) {
+                throw new IOException("Embedding verification failed - payload checksum mismatch after saving");
+            }
+        }
+        metrics.record(StageMetrics.Stage.VERIFY, start, dataToHide.length);
     }
 
-    public byte[] ultraDecompress(byte[] data) {
-        if (data.length < 5) {
-            throw new IllegalArgumentException("Data too short to contain header");
+    private static final int VERIFY_SAMPLES = 64;
+
+    private void verifySampledGroups(GroupSource source, byte[] data, PixelCodec codec) throws IOException {
+        if (source.header() != codec.layout().headerValue(data.length)) {
+            throw new IOException("Embedding verification failed - length header mismatch");
         }
-        
-        int compressionFlag = data[0] & 0xFF;
-        
-        if (compressionFlag == 0) {
-            int originalLength = ByteBuffer.wrap(data, 1, 4).getInt();
-            if (originalLength <= 0 || originalLength > 100_000_000) {
-                throw new IllegalArgumentException("Invalid original length: " + originalLength);
-            }
-            byte[] result = new byte[originalLength];
-            System.arraycopy(data, 5, result, 0, originalLength);
-            return result;
-        } else if (compressionFlag == 1) {
-            if (data.length < 9) {
-                throw new IllegalArgumentException("Compressed data too short to contain header");
+        int groupBytes = codec.bytesPerGroup();
+        int fullGroups = data.length / groupBytes;
+        int samples = Math.min(VERIFY_SAMPLES, fullGroups);
+        byte[] actual = new byte[groupBytes];
+        for (int i = 0; i < samples; i++) {
+            int group = samples == 1 ? 0 : (int) ((long) i * (fullGroups - 1) / (samples - 1));
+            source.group(group, actual);
+            for (int k = 0; k < groupBytes; k++) {
+                if (actual[k] != data[group * groupBytes + k]) {
+                    throw new IOException("Embedding verification failed - mismatch in group " + group);
+                }
             }
-            
-            ByteBuffer headerBuffer = ByteBuffer.wrap(data, 1, 8);
-            int originalLength = headerBuffer.getInt();
-            int compressedLength = headerBuffer.getInt();
-            
-            if (originalLength <= 0 || originalLength > 100_000_000 || 
-                compressedLength <= 0 || compressedLength > data.length - 9) {
-                throw new IllegalArgumentException("Invalid decompression sizes");
+        }
+    }
+
+    /** Reads width and height from the IHDR chunk without decoding the image. */
+    private static int[] readPngDimensions(String path) throws IOException {
+        byte[] head = new byte[24];
+        try (InputStream in = new FileInputStream(path)) {
+            int read = 0;
+            while (read < head.length) {
+                int n = in.read(head, read, head.length - read);
+                if (n < 0) {
+                    throw new IOException("Output PNG truncated");
+                }
+                read += n;
             }
-            
-            byte[] result = new byte[originalLength];
-            LZ4FastDecompressor decompressor = lz4Factory.fastDecompressor();
-            decompressor.decompress(data, 9, result, 0, originalLength);
-            return result;
-        } else {
-            throw new IllegalArgumentException("Unknown compression flag: " + compressionFlag + 
-                                           " (Decimal: " + compressionFlag + 
-                                           ", Hex: 0x" + Integer.toHexString(compressionFlag) + 
-                                           "). This image may not contain valid steganographic data.");
         }
+        ByteBuffer header = ByteBuffer.wrap(head);
+        if (header.getLong(0) != 0x89504E470D0A1A0AL || header.getInt(12) != 0x49484452) {
+            throw new IOException("Output is not a valid PNG");
+        }
+        return new int[] {header.getInt(16), header.getInt(20)};
+    }
+
+    private static long crc32(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    /** Encodes an ARGB_8888 pixel buffer to a new temp PNG with the parallel encoder. */
+    public String writePng(ByteBuffer pixelBuffer, int width, int height, int level) throws IOException {
+        return encodePng(ParallelPngEncoder.fromPixelBuffer(pixelBuffer, width, height), level);
+    }
+
+    private String encodePng(ParallelPngEncoder.RowSource source, int level) throws IOException {
+        String outputPath = createTempFile("png");
+        long start = System.nanoTime();
+        StageMetrics.TimedOutputStream file = metrics.timeWrites(new FileOutputStream(outputPath));
+        try (OutputStream fos = new BufferedOutputStream(file, 256 * 1024)) {
+            pngEncoder.encode(source, fos, level);
+        }
+        metrics.recordEncode(start, file);
+        return outputPath;
     }
 
     public String createTempFile(String extension) throws IOException {
@@ -0,0 +1,162 @@
+package com.example.stegoapp.steganography;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Span tracing into a fixed-size ring buffer, exported as Chrome trace
+ * event JSON that chrome://tracing and ui.perfetto.dev open directly.
+ *
+ * Tracing is off by default. Call sites are guarded by {@link #COMPILED}, a
+ * constant that lets the compiler drop them entirely, and then by
+ * {@link #isEnabled()}, a single volatile read; nothing is timed or
+ * allocated unless both are true. Once the buffer is full the oldest spans
+ * are overwritten.
+ *
+ * <pre>
+ *   long start = Tracer.begin();
+ *   work();
+ *   Tracer.end("work", start);
+ * </pre>
+ */
+public final class Tracer {
+    public static final boolean COMPILED = true;
+    public static final int DEFAULT_CAPACITY = 16 * 1024;
+
+    private static volatile boolean enabled;
+
+    private static String[] names = new String[0];
+    private static long[] starts = new long[0];
+    private static long[] durations = new long[0];
+    private static long[] threadIds = new long[0];
+    private static long[] args = new long[0];
+    private static long recorded;
+    private static final Map<Long, String> threadNames = new HashMap<>();
+    private static final long EPOCH_NANOS = System.nanoTime();
+
+    private Tracer() {
+    }
+
+    public static boolean isEnabled() {
+        return COMPILED && enabled;
+    }
+
+    /**
+     * Turns tracing on with a fresh buffer of {@code capacity} spans, or off;
+     * turning it off keeps the recorded spans for {@link #exportChromeJson}.
+     */
+    public static synchronized void setEnabled(boolean on, int capacity) {
+        if (on) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("capacity must be > 0: " + capacity);
+            }
+            names = new String[capacity];
+            starts = new long[capacity];
+            durations = new long[capacity];
+            threadIds = new long[capacity];
+            args = new long[capacity];
+            recorded = 0;
+            threadNames.clear();
+        }
+        enabled = on;
+    }
+
+    /** Start time for {@link #end}, or 0 when tracing is off. */
+    public static long begin() {
+        return isEnabled() ? System.nanoTime() : 0;
+    }
+
+    public static void end(String name, long startNanos) {
+        end(name, startNanos, -1);
+    }
+
+    /** Records a span from {@link #begin}; {@code bytes} (or -1) is shown as its argument. */
+    public static void end(String name, long startNanos, long bytes) {
+        if (startNanos != 0 && isEnabled()) {
+            span(name, startNanos, System.nanoTime(), bytes);
+        }
+    }
+
+    /** Records a span whose end is already known, e.g. one timed for metrics anyway. */
+    public static void span(String name, long startNanos, long endNanos, long bytes) {
+        if (!isEnabled()) {
+            return;
+        }
+        Thread thread = Thread.currentThread();
+        long threadId = thread.getId();
+        synchronized (Tracer.class) {
+            if (names.length == 0) {
+                return;
+            }
+            int slot = (int) (recorded++ % names.length);
+            names[slot] = name;
+            starts[slot] = startNanos;
+            durations[slot] = endNanos - startNanos;
+            threadIds[slot] = threadId;
+            args[slot] = bytes;
+            if (!threadNames.containsKey(threadId)) {
+                threadNames.put(threadId, thread.getName());
+            }
+        }
+    }
+
+    /** Number of spans in the buffer. */
+    public static synchronized int size() {
+        return (int) Math.min(recorded, names.length);
+    }
+
+    /** Writes the buffered spans, oldest first, as a Chrome trace JSON object. */
+    public static synchronized void exportChromeJson(Writer out) throws IOException {
+        out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean first = true;
+        for (Map.Entry<Long, String> thread : threadNames.entrySet()) {
+            first = separator(out, first);
+            out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + thread.getKey()
+                    + ",\"args\":{\"name\":" + quote(thread.getValue()) + "}}");
+        }
+        int count = size();
+        long firstSeq = recorded - count;
+        for (long seq = firstSeq; seq < recorded; seq++) {
+            int slot = (int) (seq % names.length);
+            first = separator(out, first);
+            out.write("{\"name\":" + quote(names[slot]) + ",\"cat\":\"stego\",\"ph\":\"X\",\"pid\":1"
+                    + ",\"tid\":" + threadIds[slot]
+                    + ",\"ts\":" + micros(starts[slot] - EPOCH_NANOS)
+                    + ",\"dur\":" + micros(durations[slot]));
+            if (args[slot] >= 0) {
+                out.write(",\"args\":{\"bytes\":" + args[slot] + "}");
+            }
+            out.write("}");
+        }
+        out.write("]}");
+    }
+
+    private static boolean separator(Writer out, boolean first) throws IOException {
+        if (!first) {
+            out.write(',');
+        }
+        return false;
+    }
+
+    private static String micros(long nanos) {
+        return (nanos / 1000) + "." + String.format(Locale.ROOT, "%03d", Math.abs(nanos % 1000));
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.stegoapp.steganography;
+
+import java.util.Locale;
+
+/**
+ * How much checking a hide operation does after writing its output.
+ */
+public enum VerificationLevel {
+    /** No checks. */
+    NONE,
+    /** Reads the PNG IHDR of the output and compares its dimensions. */
+    HEADER,
+    /** HEADER plus the length header and evenly spaced payload groups of the embedded pixels. */
+    SAMPLED,
+    /** Decodes the written file, extracts the whole payload and compares CRC32 checksums. */
+    FULL;
+
+    public static VerificationLevel fromName(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    public String getName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
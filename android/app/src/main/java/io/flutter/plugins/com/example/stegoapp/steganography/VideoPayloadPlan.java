@@ -0,0 +1,242 @@
+package com.example.stegoapp.steganography;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.os.Build;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Sample table of a carrier's video track and the payload layout derived
+ * from it. Because every sample's share of the payload follows from its
+ * size alone, the hide side can work out up front which samples carry
+ * which payload bytes and store a seek index in the header frame.
+ *
+ * Indexed header (LSB-embedded at offset 0 of the header frame):
+ * <pre>
+ *   i32 INDEX_MAGIC
+ *   i32 payload length
+ *   i32 segment count
+ *   per segment: i64 sample time (us), i32 payload offset
+ * </pre>
+ * Each segment starts at the first carrying sample after a sync sample, so
+ * an extractor can {@code seekTo} it and read on from there.
+ */
+public class VideoPayloadPlan {
+    public static final int INDEX_MAGIC = 0x53544749;
+    public static final int FRAME_SKIP_COUNT = 10;
+    public static final int HEADER_FRAME_POSITION = 15;
+    /** Samples after {@link #FRAME_SKIP_COUNT} the extractor checks for the header frame. */
+    public static final int HEADER_SEARCH_FRAMES = HEADER_FRAME_POSITION + 10;
+    public static final int MIN_DATA_OFFSET = 64;
+    public static final int INDEX_HEADER_BYTES = 12;
+    public static final int SEGMENT_BYTES = 12;
+    public static final int MAX_SEGMENTS = 256;
+
+    private long[] times = new long[1024];
+    private int[] sizes = new int[1024];
+    private boolean[] keyFrames = new boolean[1024];
+    private int count;
+
+    /** Offset of the payload bytes inside a carrying sample. */
+    public static int dataOffset(int sampleSize) {
+        return Math.max(MIN_DATA_OFFSET, sampleSize / 5);
+    }
+
+    /** Payload bytes a non-keyframe sample of this size carries (0 if none). */
+    public static int bytesFor(int sampleSize) {
+        int fit = (sampleSize - dataOffset(sampleSize)) / 8;
+        return Math.max(0, Math.min(Math.max(1, (sampleSize / 8) * 3 / 4), fit));
+    }
+
+    /**
+     * Reads the sample table of the extractor's selected track. Sample sizes
+     * come from {@link MediaExtractor#getSampleSize} where available, so
+     * only pre-P devices actually copy sample data.
+     */
+    public static VideoPayloadPlan scan(MediaExtractor extractor, SampleBufferPool pool, ProgressListener listener) {
+        VideoPayloadPlan plan = new VideoPayloadPlan();
+        MediaSample sample = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P ? null : new MediaSample();
+        while (true) {
+            listener.throwIfCancelled();
+            long time = extractor.getSampleTime();
+            if (time < 0) {
+                break;
+            }
+            int size;
+            if (sample == null) {
+                size = (int) extractor.getSampleSize();
+            } else {
+                if (!sample.read(extractor, pool)) {
+                    break;
+                }
+                size = sample.info.size;
+            }
+            plan.add(time, size, (extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0);
+            extractor.advance();
+        }
+        if (sample != null) {
+            sample.release(pool);
+        }
+        return plan;
+    }
+
+    private void add(long time, int size, boolean keyFrame) {
+        if (count == times.length) {
+            int grown = count * 2;
+            times = Arrays.copyOf(times, grown);
+            sizes = Arrays.copyOf(sizes, grown);
+            keyFrames = Arrays.copyOf(keyFrames, grown);
+        }
+        times[count] = time;
+        sizes[count] = size;
+        keyFrames[count] = keyFrame;
+        count++;
+    }
+
+    public int getSampleCount() {
+        return count;
+    }
+
+    /**
+     * Ordinal of the header frame, or -1 if no frame inside the extractor's
+     * search window can hold one.
+     */
+    private int headerOrdinal() {
+        int nonKeyframes = 0;
+        int searchEnd = Math.min(count, FRAME_SKIP_COUNT + HEADER_SEARCH_FRAMES);
+        for (int i = FRAME_SKIP_COUNT; i < searchEnd; i++) {
+            if (keyFrames[i]) {
+                continue;
+            }
+            nonKeyframes++;
+            if (nonKeyframes >= HEADER_FRAME_POSITION
+                    && sizes[i] / 8 >= INDEX_HEADER_BYTES + SEGMENT_BYTES) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Total payload bytes (compressed) the track can carry. */
+    public long getCapacity() {
+        int header = headerOrdinal();
+        if (header < 0) {
+            return 0;
+        }
+        long capacity = 0;
+        for (int i = header + 1; i < count; i++) {
+            if (!keyFrames[i]) {
+                capacity += bytesFor(sizes[i]);
+            }
+        }
+        return capacity;
+    }
+
+    /** Lays out {@code dataLength} payload bytes, or throws if they do not fit. */
+    public Layout layout(int dataLength) throws IOException {
+        int header = headerOrdinal();
+        if (header < 0) {
+            throw new IOException("Video too short to hold a payload header");
+        }
+        long[] startTimes = new long[64];
+        int[] startOffsets = new int[64];
+        int starts = 0;
+        boolean newGroup = true;
+        int placed = 0;
+        for (int i = header + 1; i < count && placed < dataLength; i++) {
+            if (keyFrames[i]) {
+                newGroup = true;
+                continue;
+            }
+            int bytes = bytesFor(sizes[i]);
+            if (bytes == 0) {
+                continue;
+            }
+            if (newGroup) {
+                if (starts == startTimes.length) {
+                    startTimes = Arrays.copyOf(startTimes, starts * 2);
+                    startOffsets = Arrays.copyOf(startOffsets, starts * 2);
+                }
+                startTimes[starts] = times[i];
+                startOffsets[starts] = placed;
+                starts++;
+                newGroup = false;
+            }
+            placed += Math.min(bytes, dataLength - placed);
+        }
+        if (placed < dataLength) {
+            throw new IOException("Video too small to hide data of size " + dataLength
+                    + " bytes. Capacity is " + placed + " bytes");
+        }
+
+        int maxSegments = Math.min(MAX_SEGMENTS, (sizes[header] / 8 - INDEX_HEADER_BYTES) / SEGMENT_BYTES);
+        int stride = (starts + maxSegments - 1) / maxSegments;
+        int segments = (starts + stride - 1) / stride;
+        ByteBuffer index = ByteBuffer.allocate(INDEX_HEADER_BYTES + segments * SEGMENT_BYTES);
+        index.putInt(INDEX_MAGIC);
+        index.putInt(dataLength);
+        index.putInt(segments);
+        for (int s = 0; s < starts; s += stride) {
+            index.putLong(startTimes[s]);
+            index.putInt(startOffsets[s]);
+        }
+        return new Layout(header, index.array());
+    }
+
+    /** Where the header goes and what it contains. */
+    public static final class Layout {
+        public final int headerOrdinal;
+        public final byte[] header;
+
+        Layout(int headerOrdinal, byte[] header) {
+            this.headerOrdinal = headerOrdinal;
+            this.header = header;
+        }
+    }
+
+    /** Parsed seek index from an indexed header. */
+    public static final class Index {
+        public final int dataLength;
+        public final long[] times;
+        public final int[] offsets;
+
+        Index(int dataLength, long[] times, int[] offsets) {
+            this.dataLength = dataLength;
+            this.times = times;
+            this.offsets = offsets;
+        }
+
+        public int segmentCount() {
+            return times.length;
+        }
+
+        /** Payload offset where segment {@code s} ends. */
+        public int segmentEnd(int s) {
+            return s + 1 < offsets.length ? offsets[s + 1] : dataLength;
+        }
+
+        public static Index parse(byte[] header, int segmentCount, int dataLength) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(header, INDEX_HEADER_BYTES, segmentCount * SEGMENT_BYTES);
+            long[] times = new long[segmentCount];
+            int[] offsets = new int[segmentCount];
+            int previous = -1;
+            for (int s = 0; s < segmentCount; s++) {
+                times[s] = buffer.getLong();
+                offsets[s] = buffer.getInt();
+                if (offsets[s] <= previous || offsets[s] >= dataLength || (s == 0 && offsets[s] != 0)) {
+                    throw new IOException("Corrupt payload index");
+                }
+                previous = offsets[s];
+            }
+            return new Index(dataLength, times, offsets);
+        }
+    }
+
+    /** True for samples that may carry payload bytes. */
+    static boolean carries(MediaCodec.BufferInfo info) {
+        return (info.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) == 0 && bytesFor(info.size) > 0;
+    }
+}
@@ -9,15 +9,30 @@ import android.media.MediaFormat;
 import android.media.MediaMuxer;
 import android.util.Log;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
 import java.nio.ByteBuffer;
-import java.security.MessageDigest;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 public class VideoSteganography {
     private static final String TAG = "VideoSteganography";
@@ -25,11 +40,28 @@ public class VideoSteganography {
     private static final int HEADER_SIZE = 8;
     private static final int MAGIC_NUMBER = 0x53544547; 
     private static final int MAX_DATA_SIZE = 5 * 1024 * 1024; 
-    private static final int FRAME_SKIP_COUNT = 10;
-    private static final int HEADER_FRAME_POSITION = 15;
+    private static final int PARALLEL_EXTRACT_MIN_BYTES = 256 * 1024;
+    private static final int MAX_EXTRACTORS = 4;
+    private final PayloadCodec payloadCodec;
+    /**
+     * Runs the extra extractors of a parallel read. They block on file I/O,
+     * so they get their own threads instead of the CPU-sized compute pool.
+     */
+    private final ThreadPoolExecutor extractorPool;
+    private final StageMetrics metrics;
 
-    public VideoSteganography(Context context) {
+    public VideoSteganography(Context context, PayloadCodec payloadCodec, StageMetrics metrics) {
         this.context = context;
+        this.metrics = metrics;
+        this.payloadCodec = payloadCodec;
+        AtomicInteger threadId = new AtomicInteger();
+        this.extractorPool = new ThreadPoolExecutor(MAX_EXTRACTORS - 1, MAX_EXTRACTORS - 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> new Thread(r, "stego-extract-" + threadId.incrementAndGet()));
+        this.extractorPool.allowCoreThreadTimeOut(true);
+    }
+
+    public void shutdown() {
+        extractorPool.shutdownNow();
     }
 
   
@@ -43,30 +75,58 @@ public class VideoSteganography {
         return tempFile.getAbsolutePath();
     }
 
-    private byte[] ultraCompress(byte[] data) {
-        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
-        deflater.setInput(data);
-        deflater.finish();
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length);
-        byte[] buffer = new byte[1024];
-        while (!deflater.finished()) {
-            int count = deflater.deflate(buffer);
-            outputStream.write(buffer, 0, count);
+    /**
+     * Compresses the secret straight from its source, prefixed with the
+     * CRC32 the extractor checks. The CRC takes a first read of the source,
+     * so the original bytes are never held in memory.
+     */
+    private byte[] ultraCompress(PayloadCodec.Source secret, HideOptions hideOptions) throws IOException {
+        long start = System.nanoTime();
+        CRC32 crc = new CRC32();
+        long length = 0;
+        try (InputStream in = secret.openStream()) {
+            byte[] chunk = new byte[PayloadCodec.STREAM_CHUNK_BYTES];
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                crc.update(chunk, 0, n);
+                length += n;
+            }
         }
-        try {
-            outputStream.close();
-        } catch (IOException e) {
-            Log.e(TAG, "Error closing output stream in compress", e);
-        }
-        byte[] compressedData = outputStream.toByteArray();
-        byte[] result = new byte[compressedData.length + 1];
-        result[0] = 1;
-        System.arraycopy(compressedData, 0, result, 1, compressedData.length);
-        return result;
+        byte[] checksum = ByteBuffer.allocate(4).putInt((int) crc.getValue()).array();
+        long checkedLength = length + checksum.length;
+        PayloadCodec.Source checked = new PayloadCodec.Source() {
+            @Override
+            public InputStream openStream() throws IOException {
+                return new SequenceInputStream(new ByteArrayInputStream(checksum), secret.openStream());
+            }
+
+            @Override
+            public long getLength() {
+                return checkedLength;
+            }
+
+            @Override
+            public String getMimeType() {
+                return secret.getMimeType();
+            }
+        };
+        byte[] encoded = payloadCodec.encode(checked, hideOptions.getCompression(), hideOptions.getCompressionBudgetMs());
+        metrics.record(StageMetrics.Stage.COMPRESS, start, checkedLength);
+        return encoded;
     }
 
 
-    private byte[] ultraDecompress(byte[] data) throws IOException {
+    /**
+     * Decodes a {@link PayloadCodec} container, or the older format of a
+     * flag byte 1 followed by a zlib stream.
+     */
+    private PayloadCodec.Decoded ultraDecompress(byte[] data) throws IOException {
+        if (PayloadCodec.isContainer(data)) {
+            long start = System.nanoTime();
+            PayloadCodec.Decoded decoded = payloadCodec.decodePayload(data);
+            metrics.record(StageMetrics.Stage.DECOMPRESS, start, decoded.data.length);
+            return decoded;
+        }
         if (data.length < 1 || data[0] != 1) {
             throw new IOException("Data not compressed or invalid format");
         }
@@ -85,26 +145,38 @@ public class VideoSteganography {
         } catch (Exception e) {
             throw new IOException("Decompression failed", e);
         }
-        return outputStream.toByteArray();
+        return new PayloadCodec.Decoded(outputStream.toByteArray(), null);
     }
 
     public String hideImageInVideo(String secretImageUri, String carrierVideoUri) {
+        return hideImageInVideo(secretImageUri, carrierVideoUri, HideOptions.defaults(), ProgressListener.NONE);
+    }
+
+    public String hideImageInVideo(String secretImageUri, String carrierVideoUri, HideOptions hideOptions, ProgressListener listener) {
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
         try {
-            Bitmap secretBitmap = loadBitmap(secretImageUri);
-            ByteArrayOutputStream stream = new ByteArrayOutputStream();
-            secretBitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
-            byte[] secretData = stream.toByteArray();
-            secretBitmap.recycle();
-            return hideBinaryInVideo(secretData, carrierVideoUri);
+            PayloadSource secret = PayloadSource.open(context, secretImageUri);
+            byte[] dataToHide = ultraCompress(secret, hideOptions);
+            listener.throwIfCancelled();
+            String result = hideBinaryInVideo(dataToHide, carrierVideoUri, hideOptions, listener);
+            succeeded = true;
+            return result;
         } catch (Exception e) {
             Log.e(TAG, "Error hiding image in video", e);
             return "Error: " + e.getMessage();
+        } finally {
+            metrics.recordOperation("hideImageInVideo", startTime, succeeded);
         }
     }
 
     public Bitmap extractImageFromVideo(String stegoVideoUri) {
+        return extractImageFromVideo(stegoVideoUri, ProgressListener.NONE);
+    }
+
+    public Bitmap extractImageFromVideo(String stegoVideoUri, ProgressListener listener) {
         try {
-            byte[] imageData = extractBinaryFromVideo(stegoVideoUri);
+            byte[] imageData = extractBinaryFromVideo(stegoVideoUri, listener).data;
             if (imageData != null && imageData.length > 0) {
                 return BitmapFactory.decodeByteArray(imageData, 0, imageData.length);
             } else {
@@ -117,21 +189,220 @@ public class VideoSteganography {
         }
     }
 
-    private String hideBinaryInVideo(byte[] data, String videoUri) throws IOException {
-        ByteBuffer dataWithChecksum = ByteBuffer.allocate(data.length + 4);
-        CRC32 crc = new CRC32();
-        crc.update(data);
-        dataWithChecksum.putInt((int) crc.getValue());
-        dataWithChecksum.put(data);
-        byte[] dataToHide = ultraCompress(dataWithChecksum.array());
-        Log.d(TAG, "Data size to hide: " + dataToHide.length + " bytes");
-        Log.d(TAG, "Pre-embed first byte (compression flag): " + (dataToHide[0] & 0xFF));
-        Log.d(TAG, "Pre-embed first 5 bytes: " +
-                String.format("%02x %02x %02x %02x %02x",
-                        dataToHide[0], dataToHide[1], dataToHide[2],
-                        dataToHide[3], dataToHide[4]));
-        String dataHash = computeHash(dataToHide);
-        Log.d(TAG, "Pre-embed data hash: " + dataHash);
+    /**
+     * Payload bytes (after compression, including the checksum) the carrier
+     * can hold, worked out from sample sizes and flags only.
+     */
+    public long getCapacity(String videoUri, ProgressListener listener) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        int videoTrackIndex = -1;
+        MediaFormat videoFormat = null;
+        try {
+            extractor.setDataSource(videoUri);
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat format = extractor.getTrackFormat(i);
+                String mime = format.getString(MediaFormat.KEY_MIME);
+                if (mime.startsWith("video/")) {
+                    videoTrackIndex = i;
+                    videoFormat = format;
+                    break;
+                }
+            }
+            if (videoTrackIndex == -1) {
+                throw new IOException("No video track found");
+            }
+            extractor.selectTrack(videoTrackIndex);
+            return Math.min(MAX_DATA_SIZE, VideoPayloadPlan.scan(extractor, SampleBufferPool.forFormat(videoFormat), listener).getCapacity());
+        } finally {
+            extractor.release();
+        }
+    }
+
+    /** Reads the sample table of the carrier's video track with a separate extractor. */
+    private VideoPayloadPlan planPayload(String videoUri, int videoTrackIndex, MediaFormat videoFormat,
+                                         ProgressListener listener) throws IOException {
+        MediaExtractor scanner = new MediaExtractor();
+        try {
+            scanner.setDataSource(videoUri);
+            scanner.selectTrack(videoTrackIndex);
+            return VideoPayloadPlan.scan(scanner, SampleBufferPool.forFormat(videoFormat), listener);
+        } finally {
+            scanner.release();
+        }
+    }
+
+    /** Extracts the hidden secret as its original bytes, with the MIME type it was hidden with. */
+    public PayloadCodec.Decoded extractSecretFromVideo(String stegoVideoUri, ProgressListener listener) throws IOException {
+        return extractBinaryFromVideo(stegoVideoUri, listener);
+    }
+
+    /**
+     * Streams the hidden secret into {@code sink} as it is extracted: samples
+     * are read in order by one extractor and their payload bytes go straight
+     * through the decompressor, so the secret is never held whole. The
+     * checksum can only be checked at the end; when it fails, {@code sink}
+     * has already received the bad bytes and an IOException is thrown.
+     */
+    public PayloadCodec.Streamed extractSecretTo(String stegoVideoUri, OutputStream sink, ProgressListener listener) throws IOException {
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            PayloadLocation location = locatePayload(stegoVideoUri);
+            try {
+                location.extractor.advance();
+                ChecksumSink checked = new ChecksumSink(sink);
+                long start = System.nanoTime();
+                String mimeType = decodeTo(new SampleStream(location, listener), checked);
+                checked.verify();
+                // Extraction runs inside the decompressor's reads, so both are timed together.
+                metrics.record(StageMetrics.Stage.DECOMPRESS, start, checked.length);
+                succeeded = true;
+                return new PayloadCodec.Streamed(checked.length, mimeType);
+            } finally {
+                location.release();
+            }
+        } finally {
+            metrics.recordOperation("extractImageFromVideo", startTime, succeeded);
+        }
+    }
+
+    /** Streaming counterpart of {@link #ultraDecompress}; returns the recorded MIME type, if any. */
+    private String decodeTo(InputStream payload, OutputStream sink) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(payload, 1);
+        int first = in.read();
+        if (first == PayloadCodec.MAGIC) {
+            in.unread(first);
+            return payloadCodec.decodeTo(in, sink).mimeType;
+        }
+        if (first != 1) {
+            throw new IOException("Data not compressed or invalid format");
+        }
+        try (InputStream inflated = new InflaterInputStream(in)) {
+            byte[] chunk = new byte[PayloadCodec.STREAM_CHUNK_BYTES];
+            int n;
+            while ((n = inflated.read(chunk)) != -1) {
+                sink.write(chunk, 0, n);
+            }
+        }
+        return null;
+    }
+
+    /** The payload of a located header, extracted one sample per refill. */
+    private static final class SampleStream extends InputStream {
+        private final PayloadLocation location;
+        private final ProgressListener listener;
+        private byte[] chunk = new byte[0];
+        private int extracted;
+        private int position;
+        private int limit;
+
+        SampleStream(PayloadLocation location, ProgressListener listener) {
+            this.location = location;
+            this.listener = listener;
+        }
+
+        private boolean fill() throws IOException {
+            while (position >= limit) {
+                if (extracted >= location.dataLength) {
+                    return false;
+                }
+                listener.throwIfCancelled();
+                if (!location.sample.read(location.extractor, location.pool)) {
+                    throw new IOException("Incomplete data extraction: got " + extracted + " of "
+                            + location.dataLength + " bytes");
+                }
+                int bytes = payloadBytes(location, location.dataLength - extracted);
+                if (bytes > 0) {
+                    if (chunk.length < bytes) {
+                        chunk = new byte[bytes];
+                    }
+                    SampleCodec.extractBytes(location.sample.buffer, payloadOffset(location), chunk, 0, bytes);
+                    extracted += bytes;
+                    position = 0;
+                    limit = bytes;
+                    listener.onProgress("extract", extracted, location.dataLength);
+                }
+                location.extractor.advance();
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? chunk[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(chunk, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+
+    /**
+     * Passes the secret through to the caller's sink while stripping and
+     * checking the CRC32 that {@link #ultraCompress} puts in front of it.
+     */
+    private static final class ChecksumSink extends OutputStream {
+        private final OutputStream sink;
+        private final CRC32 crc = new CRC32();
+        private final byte[] stored = new byte[4];
+        private int storedBytes;
+        long length;
+
+        ChecksumSink(OutputStream sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int header = Math.min(len, stored.length - storedBytes);
+            System.arraycopy(b, off, stored, storedBytes, header);
+            storedBytes += header;
+            if (len > header) {
+                crc.update(b, off + header, len - header);
+                sink.write(b, off + header, len - header);
+                length += len - header;
+            }
+        }
+
+        void verify() throws IOException {
+            if (storedBytes < stored.length) {
+                throw new IOException("Payload too short to contain a checksum");
+            }
+            int storedChecksum = ByteBuffer.wrap(stored).getInt();
+            int calculatedChecksum = (int) crc.getValue();
+            if (storedChecksum != calculatedChecksum) {
+                throw new IOException("Data integrity check failed: stored checksum " + storedChecksum +
+                        ", calculated " + calculatedChecksum);
+            }
+        }
+    }
+
+    /**
+     * Hides an already compressed payload, as {@link #ultraCompress} returns it, in the video track.
+     * The payload stays in memory: its length is needed up front to lay out the sample index, and
+     * it is capped at {@link #MAX_DATA_SIZE}.
+     */
+    private String hideBinaryInVideo(byte[] dataToHide, String videoUri, HideOptions hideOptions, ProgressListener listener) throws IOException {
+        if (dataToHide.length > MAX_DATA_SIZE) {
+            // The extractor rejects any index claiming more than this.
+            throw new IOException("Data too large to hide: " + dataToHide.length
+                    + " bytes. Maximum is " + MAX_DATA_SIZE + " bytes");
+        }
         String outputPath = createTempFile("mp4");
         MediaExtractor extractor = new MediaExtractor();
         extractor.setDataSource(videoUri);
@@ -149,123 +420,116 @@ public class VideoSteganography {
         if (videoTrackIndex == -1) {
             throw new IOException("No video track found");
         }
-        MediaMuxer muxer = new MediaMuxer(outputPath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
-        int videoOutputTrackIndex = muxer.addTrack(videoFormat);
-        int[] trackMap = new int[extractor.getTrackCount()];
-        for (int i = 0; i < extractor.getTrackCount(); i++) {
-            if (i == videoTrackIndex) {
-                trackMap[i] = videoOutputTrackIndex;
-            } else {
-                trackMap[i] = muxer.addTrack(extractor.getTrackFormat(i));
-            }
+        VideoPayloadPlan.Layout layout;
+        try {
+            long planStart = System.nanoTime();
+            layout = planPayload(videoUri, videoTrackIndex, videoFormat, listener).layout(dataToHide.length);
+            metrics.record(StageMetrics.Stage.DECODE, planStart, 0);
+        } catch (IOException | RuntimeException e) {
+            extractor.release();
+            throw e;
         }
-        muxer.start();
-        ByteBuffer headerBuffer = ByteBuffer.allocate(HEADER_SIZE);
-        headerBuffer.putInt(MAGIC_NUMBER);
-        headerBuffer.putInt(dataToHide.length);
-        headerBuffer.rewind();
-        boolean headerWritten = false;
+        MediaMuxer muxer = new MediaMuxer(outputPath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        boolean muxerStarted = false;
         int dataOffset = 0;
         boolean dataFullyWritten = false;
-        int maxBufferSize = 1024 * 1024;
-        ByteBuffer buffer = ByteBuffer.allocate(maxBufferSize);
-        MediaCodec.BufferInfo bufferInfo = new MediaCodec.BufferInfo();
-        extractor.selectTrack(videoTrackIndex);
-        int framesSkipped = 0;
-        while (framesSkipped < FRAME_SKIP_COUNT) {
-            buffer.clear();
-            int chunkSize = extractor.readSampleData(buffer, 0);
-            if (chunkSize < 0) {
-                break;
-            }
-            bufferInfo.offset = 0;
-            bufferInfo.size = chunkSize;
-            bufferInfo.presentationTimeUs = extractor.getSampleTime();
-            bufferInfo.flags = extractor.getSampleFlags();
-            buffer.rewind();
-            muxer.writeSampleData(videoOutputTrackIndex, buffer, bufferInfo);
-            extractor.advance();
-            framesSkipped++;
-        }
-        int nonKeyframeCount = 0;
-        while (true) {
-            buffer.clear();
-            int chunkSize = extractor.readSampleData(buffer, 0);
-            if (chunkSize < 0) {
-                break;
+        try {
+            int videoOutputTrackIndex = muxer.addTrack(videoFormat);
+            int[] trackMap = new int[extractor.getTrackCount()];
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                if (i == videoTrackIndex) {
+                    trackMap[i] = videoOutputTrackIndex;
+                } else {
+                    trackMap[i] = muxer.addTrack(extractor.getTrackFormat(i));
+                }
             }
-            int trackIndex = extractor.getSampleTrackIndex();
-            if (trackIndex != videoTrackIndex) {
-                extractor.advance();
-                continue;
-            }
-            bufferInfo.offset = 0;
-            bufferInfo.size = chunkSize;
-            bufferInfo.presentationTimeUs = extractor.getSampleTime();
-            bufferInfo.flags = extractor.getSampleFlags();
-            boolean isKeyFrame = (bufferInfo.flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
-            if (!isKeyFrame) {
-                nonKeyframeCount++;
-                buffer.rewind();
-                byte[] frameData = new byte[chunkSize];
-                buffer.get(frameData, 0, chunkSize);
-                if (!headerWritten && nonKeyframeCount == HEADER_FRAME_POSITION && chunkSize > HEADER_SIZE * 8) {
-                    embedBytes(frameData, headerBuffer.array(), 0);
-                    headerWritten = true;
-                    Log.d(TAG, "Header written in non-keyframe #" + nonKeyframeCount);
-                } else if (headerWritten && !dataFullyWritten && dataOffset < dataToHide.length && nonKeyframeCount > HEADER_FRAME_POSITION) {
-                    int maxBytesToEmbed = Math.max(1, (chunkSize / 8) * 3 / 4);
-                    int bytesToEmbed = Math.min(maxBytesToEmbed, dataToHide.length - dataOffset);
-                    if (bytesToEmbed > 0) {
-                        byte[] dataChunk = new byte[bytesToEmbed];
-                        System.arraycopy(dataToHide, dataOffset, dataChunk, 0, bytesToEmbed);
-                        int safeOffset = Math.max(HEADER_SIZE * 8, chunkSize / 5);
-                        embedBytes(frameData, dataChunk, safeOffset);
-                        dataOffset += bytesToEmbed;
-                        if (dataOffset >= dataToHide.length) {
-                            dataFullyWritten = true;
-                            Log.d(TAG, "All data written, total: " + dataOffset + " bytes");
-                        }
-                    }
+            muxer.start();
+            muxerStarted = true;
+            long muxStart = System.nanoTime();
+            SampleBufferPool pool = SampleBufferPool.forFormat(videoFormat);
+            SamplePipeline pipeline = new SamplePipeline(pool, SamplePipeline.DEFAULT_DEPTH);
+            PayloadEmbedder embedder = new PayloadEmbedder(dataToHide, layout, videoTrackIndex, listener);
+            long framesProcessed;
+            if (hideOptions.isInterleavedRemux()) {
+                // One sequential read of every track in file order; the embedder only touches video samples.
+                for (int i = 0; i < extractor.getTrackCount(); i++) {
+                    extractor.selectTrack(i);
                 }
-                ByteBuffer modifiedBuffer = ByteBuffer.wrap(frameData);
-                muxer.writeSampleData(trackMap[trackIndex], modifiedBuffer, bufferInfo);
+                framesProcessed = pipeline.run(extractor, muxer, trackMap, embedder, listener);
             } else {
-                buffer.rewind();
-                muxer.writeSampleData(trackMap[trackIndex], buffer, bufferInfo);
+                extractor.selectTrack(videoTrackIndex);
+                framesProcessed = pipeline.run(extractor, muxer, trackMap, embedder, listener);
+                extractor.unselectTrack(videoTrackIndex);
+                for (int i = 0; i < extractor.getTrackCount(); i++) {
+                    if (i == videoTrackIndex) continue;
+                    extractor.selectTrack(i);
+                    extractor.seekTo(0, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+                    framesProcessed += pipeline.run(extractor, muxer, trackMap, null, listener);
+                    extractor.unselectTrack(i);
+                }
             }
-            extractor.advance();
-        }
-        for (int i = 0; i < extractor.getTrackCount(); i++) {
-            if (i == videoTrackIndex) continue;
-            extractor.unselectTrack(videoTrackIndex);
-            extractor.selectTrack(i);
-            while (true) {
-                buffer.clear();
-                int chunkSize = extractor.readSampleData(buffer, 0);
-                if (chunkSize < 0) {
-                    break;
+            dataOffset = embedder.dataOffset;
+            dataFullyWritten = dataOffset >= dataToHide.length;
+            listener.onProgress("frames", framesProcessed, framesProcessed);
+            muxer.stop();
+            muxerStarted = false;
+            metrics.record(StageMetrics.Stage.MUX, muxStart, new File(outputPath).length());
+            metrics.recordNanos(StageMetrics.Stage.EMBED, embedder.embedNanos, dataOffset);
+        } finally {
+            extractor.release();
+            if (muxerStarted) {
+                try {
+                    muxer.stop();
+                } catch (IllegalStateException e) {
+                    Log.w(TAG, "Muxer stop failed during cleanup", e);
                 }
-                int trackIndex = extractor.getSampleTrackIndex();
-                bufferInfo.offset = 0;
-                bufferInfo.size = chunkSize;
-                bufferInfo.presentationTimeUs = extractor.getSampleTime();
-                bufferInfo.flags = extractor.getSampleFlags();
-                buffer.rewind();
-                muxer.writeSampleData(trackMap[trackIndex], buffer, bufferInfo);
-                extractor.advance();
-            }
-        }
-        extractor.release();
-        muxer.stop();
-        muxer.release();
+            }
+            muxer.release();
+        }
         if (!dataFullyWritten) {
             throw new IOException("Video too small to hide data of size " + dataToHide.length + " bytes. Only embedded " + dataOffset + " bytes");
         }
         return outputPath;
     }
 
-    private byte[] extractBinaryFromVideo(String stegoVideoUri) throws IOException {
+    private PayloadCodec.Decoded extractBinaryFromVideo(String stegoVideoUri, ProgressListener listener) throws IOException {
+        long startTime = System.nanoTime();
+        boolean succeeded = false;
+        try {
+            PayloadCodec.Decoded decoded = readBinaryFromVideo(stegoVideoUri, listener);
+            succeeded = true;
+            return decoded;
+        } finally {
+            metrics.recordOperation("extractImageFromVideo", startTime, succeeded);
+        }
+    }
+
+    /**
+     * A stego video's extractor left on the sample that holds the payload
+     * header, with what the header said. Release it when done.
+     */
+    private static final class PayloadLocation {
+        final MediaExtractor extractor;
+        final int videoTrackIndex;
+        final SampleBufferPool pool;
+        final MediaSample sample = new MediaSample();
+        // Null for payloads written before the index existed.
+        VideoPayloadPlan.Index index;
+        int dataLength;
+
+        PayloadLocation(MediaExtractor extractor, int videoTrackIndex, SampleBufferPool pool) {
+            this.extractor = extractor;
+            this.videoTrackIndex = videoTrackIndex;
+            this.pool = pool;
+        }
+
+        void release() {
+            sample.release(pool);
+            extractor.release();
+        }
+    }
+
+    private PayloadLocation locatePayload(String stegoVideoUri) throws IOException {
         MediaExtractor extractor = new MediaExtractor();
         extractor.setDataSource(stegoVideoUri);
         int videoTrackIndex = -1;
@@ -278,109 +542,109 @@ public class VideoSteganography {
             }
         }
         if (videoTrackIndex == -1) {
+            extractor.release();
             throw new IOException("No video track found");
         }
         extractor.selectTrack(videoTrackIndex);
+        PayloadLocation location = new PayloadLocation(extractor, videoTrackIndex,
+                SampleBufferPool.forFormat(extractor.getTrackFormat(videoTrackIndex)));
+        try {
+            findHeader(location);
+        } catch (IOException | RuntimeException e) {
+            location.release();
+            throw e;
+        }
+        return location;
+    }
+
+    private static void findHeader(PayloadLocation location) throws IOException {
+        MediaExtractor extractor = location.extractor;
+        MediaSample sample = location.sample;
         int framesSkipped = 0;
-        while (framesSkipped < FRAME_SKIP_COUNT) {
-            int sampleSize = extractor.readSampleData(ByteBuffer.allocate(1024 * 1024), 0);
-            if (sampleSize < 0) {
+        while (framesSkipped < VideoPayloadPlan.FRAME_SKIP_COUNT) {
+            // Skipped samples are only advanced over, never read.
+            if (extractor.getSampleTime() < 0) {
                 throw new IOException("End of stream reached before skipping initial frames");
             }
             extractor.advance();
             framesSkipped++;
         }
-        ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
-        boolean headerFound = false;
-        int dataLength = 0;
-        int headerOffset = 0;
-        int nonKeyframeCount = 0;
-        int maxHeaderSearchFrames = HEADER_FRAME_POSITION + 10;
-        int framesChecked = 0;
-        while (!headerFound && framesChecked < maxHeaderSearchFrames) {
-            buffer.clear();
-            int sampleSize = extractor.readSampleData(buffer, 0);
-            if (sampleSize < 0) {
+        byte[] header = new byte[HEADER_SIZE];
+        ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+        byte[] indexHeader = new byte[VideoPayloadPlan.INDEX_HEADER_BYTES];
+        for (int framesChecked = 0; framesChecked < VideoPayloadPlan.HEADER_SEARCH_FRAMES; framesChecked++) {
+            if (!sample.read(extractor, location.pool)) {
                 throw new IOException("End of stream reached before finding header");
             }
-            int flags = extractor.getSampleFlags();
-            boolean isKeyFrame = (flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
-            if (!isKeyFrame && sampleSize > HEADER_SIZE * 8) {
-                nonKeyframeCount++;
-                buffer.rewind();
-                byte[] frameData = new byte[sampleSize];
-                buffer.get(frameData, 0, sampleSize);
+            int sampleSize = sample.info.size;
+            if (!sample.isKeyFrame() && sampleSize > HEADER_SIZE * 8) {
+                VideoPayloadPlan.Index index = readIndex(sample.buffer, indexHeader);
+                if (index != null) {
+                    location.index = index;
+                    location.dataLength = index.dataLength;
+                    return;
+                }
                 for (int offset = 0; offset < Math.min(32, sampleSize - HEADER_SIZE * 8); offset += 4) {
-                    byte[] headerBytes = extractBytes(frameData, HEADER_SIZE, offset);
-                    ByteBuffer headerBuffer = ByteBuffer.wrap(headerBytes);
-                    int magicNumber = headerBuffer.getInt();
+                    SampleCodec.extractBytes(sample.buffer, offset, header, 0, HEADER_SIZE);
+                    int magicNumber = headerBuffer.getInt(0);
                     if (magicNumber == MAGIC_NUMBER) {
-                        dataLength = headerBuffer.getInt();
+                        int dataLength = headerBuffer.getInt(4);
                         if (dataLength > 0 && dataLength <= MAX_DATA_SIZE) {
-                            Log.d(TAG, "Header found at frame " + nonKeyframeCount + ", offset " + offset + ", data length: " + dataLength);
-                            headerFound = true;
-                            headerOffset = offset;
-                            break;
+                            location.dataLength = dataLength;
+                            return;
                         }
                     }
                 }
             }
-            if (!headerFound) {
-                extractor.advance();
-            }
-            framesChecked++;
-        }
-        if (!headerFound) {
-            throw new IOException("Failed to find valid header");
+            extractor.advance();
         }
-        extractor.advance();
-        nonKeyframeCount++;
+        throw new IOException("Failed to find valid header");
+    }
+
+    private PayloadCodec.Decoded readBinaryFromVideo(String stegoVideoUri, ProgressListener listener) throws IOException {
+        long extractStart = System.nanoTime();
+        PayloadLocation location = locatePayload(stegoVideoUri);
+        int dataLength = location.dataLength;
         byte[] extractedData = new byte[dataLength];
         int dataOffset = 0;
-        while (dataOffset < dataLength) {
-            buffer.clear();
-            int sampleSize = extractor.readSampleData(buffer, 0);
-            if (sampleSize < 0) {
-                break;
-            }
-            int flags = extractor.getSampleFlags();
-            boolean isKeyFrame = (flags & MediaCodec.BUFFER_FLAG_KEY_FRAME) != 0;
-            if (!isKeyFrame) {
-                buffer.rewind();
-                byte[] frameData = new byte[sampleSize];
-                buffer.get(frameData, 0, sampleSize);
-                int safeOffset = Math.max(HEADER_SIZE * 8, sampleSize / 5);
-                int maxBytesToExtract = Math.max(1, (sampleSize / 8) * 3 / 4);
-                int bytesToExtract = Math.min(maxBytesToExtract, dataLength - dataOffset);
-                if (bytesToExtract > 0) {
-                    byte[] dataChunk = extractBytes(frameData, bytesToExtract, safeOffset);
-                    System.arraycopy(dataChunk, 0, extractedData, dataOffset, bytesToExtract);
-                    dataOffset += bytesToExtract;
-                    Log.d(TAG, "Extracted " + bytesToExtract + " bytes from frame " + nonKeyframeCount + ", total: " + dataOffset);
+        try {
+            if (location.index != null) {
+                extractIndexed(stegoVideoUri, location.videoTrackIndex, location.extractor, location.sample,
+                        location.pool, location.index, extractedData, listener);
+                dataOffset = dataLength;
+            } else {
+                location.extractor.advance();
+                while (dataOffset < dataLength) {
+                    listener.throwIfCancelled();
+                    if (!location.sample.read(location.extractor, location.pool)) {
+                        break;
+                    }
+                    int bytes = payloadBytes(location, dataLength - dataOffset);
+                    if (bytes > 0) {
+                        SampleCodec.extractBytes(location.sample.buffer, payloadOffset(location),
+                                extractedData, dataOffset, bytes);
+                        dataOffset += bytes;
+                        listener.onProgress("extract", dataOffset, dataLength);
+                    }
+                    location.extractor.advance();
                 }
-                nonKeyframeCount++;
             }
-            extractor.advance();
+        } finally {
+            location.release();
         }
-        extractor.release();
         if (dataOffset < dataLength) {
             Log.w(TAG, "Only extracted " + dataOffset + " bytes out of " + dataLength);
             throw new IOException("Incomplete data extraction: got " + dataOffset + " of " + dataLength + " bytes");
         }
-        String extractedHash = computeHash(extractedData);
-        Log.d(TAG, "Post-extract data hash: " + extractedHash);
-        Log.d(TAG, "Extracted first byte (compression flag): " + (extractedData[0] & 0xFF));
-        Log.d(TAG, "Extracted first 5 bytes: " +
-                String.format("%02x %02x %02x %02x %02x",
-                        extractedData[0], extractedData[1], extractedData[2],
-                        extractedData[3], extractedData[4]));
-        byte[] decompressedData;
+        metrics.record(StageMetrics.Stage.EXTRACT, extractStart, dataLength);
+        PayloadCodec.Decoded decoded;
         try {
-            decompressedData = ultraDecompress(extractedData);
+            decoded = ultraDecompress(extractedData);
         } catch (Exception e) {
             Log.e(TAG, "Decompression failed with exception", e);
             throw e;
         }
+        byte[] decompressedData = decoded.data;
         ByteBuffer buffer2 = ByteBuffer.wrap(decompressedData);
         int storedChecksum = buffer2.getInt();
         byte[] actualData = new byte[decompressedData.length - 4];
@@ -392,68 +656,226 @@ public class VideoSteganography {
             throw new IOException("Data integrity check failed: stored checksum " + storedChecksum +
                     ", calculated " + calculatedChecksum);
         }
-        return actualData;
+        return new PayloadCodec.Decoded(actualData, decoded.mimeType);
+    }
+
+    /**
+     * Payload bytes, up to {@code maxBytes}, in the sample just read, in the
+     * layout of the payload's header: indexed payloads occupy every carrying
+     * sample after the header in order, older ones a fixed share of every
+     * non-key sample. They start at {@link #payloadOffset}.
+     */
+    private static int payloadBytes(PayloadLocation location, int maxBytes) {
+        MediaSample sample = location.sample;
+        if (location.index != null) {
+            return VideoPayloadPlan.carries(sample.info)
+                    ? Math.min(VideoPayloadPlan.bytesFor(sample.info.size), maxBytes) : 0;
+        }
+        int maxBytesToExtract = Math.max(1, (sample.info.size / 8) * 3 / 4);
+        return sample.isKeyFrame() ? 0 : Math.min(maxBytesToExtract, maxBytes);
+    }
+
+    private static int payloadOffset(PayloadLocation location) {
+        int sampleSize = location.sample.info.size;
+        return location.index != null ? VideoPayloadPlan.dataOffset(sampleSize)
+                : Math.max(HEADER_SIZE * 8, sampleSize / 5);
     }
 
-    private void embedBytes(byte[] carrier, byte[] data, int offset) {
-        Log.d(TAG, "Embedding " + data.length + " bytes at offset " + offset + " in carrier of size " + carrier.length);
-        for (int i = 0; i < data.length; i++) {
-            if (offset + i * 8 + 7 >= carrier.length) {
-                Log.e(TAG, "Data won't fit: required " + (offset + i * 8 + 7) + ", available " + carrier.length);
-                throw new ArrayIndexOutOfBoundsException("Data won't fit in carrier");
+    /** Parses an indexed header at offset 0 of the sample, or returns null if there is none. */
+    private static VideoPayloadPlan.Index readIndex(ByteBuffer sampleBuffer, byte[] indexHeader) throws IOException {
+        SampleCodec.extractBytes(sampleBuffer, 0, indexHeader, 0, VideoPayloadPlan.INDEX_HEADER_BYTES);
+        ByteBuffer fields = ByteBuffer.wrap(indexHeader);
+        if (fields.getInt(0) != VideoPayloadPlan.INDEX_MAGIC) {
+            return null;
+        }
+        int dataLength = fields.getInt(4);
+        int segmentCount = fields.getInt(8);
+        int headerBytes = VideoPayloadPlan.INDEX_HEADER_BYTES + segmentCount * VideoPayloadPlan.SEGMENT_BYTES;
+        if (dataLength <= 0 || dataLength > MAX_DATA_SIZE
+                || segmentCount <= 0 || segmentCount > VideoPayloadPlan.MAX_SEGMENTS
+                || headerBytes * 8 > sampleBuffer.limit()) {
+            return null;
+        }
+        byte[] fullHeader = new byte[headerBytes];
+        SampleCodec.extractBytes(sampleBuffer, 0, fullHeader, 0, headerBytes);
+        return VideoPayloadPlan.Index.parse(fullHeader, segmentCount, dataLength);
+    }
+
+    /**
+     * Reads every segment of an indexed payload. Large payloads are split
+     * into contiguous runs of segments of about equal size; the caller's
+     * extractor reads the first run while extra extractors, each seeking on
+     * its own, read the others on the extractor pool. Every run fills a
+     * disjoint slice of {@code output}, so the result matches a sequential read.
+     */
+    private void extractIndexed(String stegoVideoUri, int videoTrackIndex, MediaExtractor extractor, MediaSample sample,
+                                SampleBufferPool pool, VideoPayloadPlan.Index index, byte[] output,
+                                ProgressListener listener) throws IOException {
+        int runs = index.dataLength < PARALLEL_EXTRACT_MIN_BYTES ? 1
+                : Math.min(Math.min(MAX_EXTRACTORS, Runtime.getRuntime().availableProcessors()), index.segmentCount());
+        int[] bounds = splitSegments(index, runs);
+        AtomicInteger extracted = new AtomicInteger();
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int r = 1; r < runs; r++) {
+            int from = bounds[r];
+            int to = bounds[r + 1];
+            futures.add(extractorPool.submit(() -> {
+                MediaExtractor runExtractor = new MediaExtractor();
+                MediaSample runSample = new MediaSample();
+                try {
+                    runExtractor.setDataSource(stegoVideoUri);
+                    runExtractor.selectTrack(videoTrackIndex);
+                    extractSegments(runExtractor, runSample, pool, index, from, to, output, extracted, failed, listener);
+                } catch (Throwable t) {
+                    failed.set(true);
+                    throw t;
+                } finally {
+                    runSample.release(pool);
+                    runExtractor.release();
+                }
+                return null;
+            }));
+        }
+        try {
+            extractSegments(extractor, sample, pool, index, bounds[0], bounds[1], output, extracted, failed, listener);
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Video extraction interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Video extraction failed", cause);
+        } finally {
+            failed.set(true);
+            for (Future<?> future : futures) {
+                future.cancel(false);
             }
-            embedByte(carrier, offset + i * 8, data[i]);
         }
-        byte[] verify = extractBytes(carrier, Math.min(5, data.length), offset);
-        Log.d(TAG, "Embedded verification - First 5 bytes: " +
-                String.format("%02x %02x %02x %02x %02x",
-                        verify[0], verify[1], verify[2], verify[3], verify[4]));
     }
 
-    private void embedByte(byte[] carrier, int offset, byte b) {
-        for (int i = 0; i < 8; i++) {
-            int bit = (b >> i) & 1;
-            carrier[offset + i] = (byte) ((carrier[offset + i] & 0xFE) | bit);
+    /** Splits the segments into {@code runs} contiguous runs of roughly equal payload size. */
+    private static int[] splitSegments(VideoPayloadPlan.Index index, int runs) {
+        int[] bounds = new int[runs + 1];
+        bounds[runs] = index.segmentCount();
+        int segment = 0;
+        for (int r = 1; r < runs; r++) {
+            long target = (long) index.dataLength * r / runs;
+            while (segment < index.segmentCount() - (runs - r) && index.offsets[segment] < target) {
+                segment++;
+            }
+            bounds[r] = Math.max(segment, bounds[r - 1] + 1);
+            segment = bounds[r];
         }
+        return bounds;
     }
 
-    private byte[] extractBytes(byte[] carrier, int length, int offset) {
-        byte[] result = new byte[length];
-        for (int i = 0; i < length; i++) {
-            if (offset + i * 8 + 7 >= carrier.length) {
-                Log.w(TAG, "Attempted to read beyond carrier bounds at offset " + (offset + i * 8) + ", carrier length: " + carrier.length);
-                break;
+    private static void extractSegments(MediaExtractor extractor, MediaSample sample, SampleBufferPool pool,
+                                        VideoPayloadPlan.Index index, int from, int to, byte[] output,
+                                        AtomicInteger extracted, AtomicBoolean failed,
+                                        ProgressListener listener) throws IOException {
+        for (int s = from; s < to; s++) {
+            listener.throwIfCancelled();
+            if (failed.get()) {
+                return;
             }
-            result[i] = extractByte(carrier, offset + i * 8);
+            long traceStart = Tracer.begin();
+            extractSegment(extractor, sample, pool, index, s, output);
+            Tracer.end("extractSegment", traceStart, index.segmentEnd(s) - index.offsets[s]);
+            int done = extracted.addAndGet(index.segmentEnd(s) - index.offsets[s]);
+            listener.onProgress("extract", done, index.dataLength);
         }
-        return result;
     }
 
-    private byte extractByte(byte[] carrier, int offset) {
-        byte b = 0;
-        for (int i = 0; i < 8; i++) {
-            if (offset + i < carrier.length) {
-                int bit = carrier[offset + i] & 1;
-                b |= (bit << i);
+    /**
+     * Seeks to segment {@code s} of an indexed payload and reads it into
+     * {@code output[offsets[s], segmentEnd(s))}. The extractor must have only
+     * the video track selected.
+     */
+    private static void extractSegment(MediaExtractor extractor, MediaSample sample, SampleBufferPool pool,
+                                       VideoPayloadPlan.Index index, int s, byte[] output) throws IOException {
+        long target = index.times[s];
+        extractor.seekTo(target, MediaExtractor.SEEK_TO_PREVIOUS_SYNC);
+        int syncSamplesPassed = 0;
+        while (extractor.getSampleTime() != target) {
+            if (extractor.getSampleTime() < 0 || syncSamplesPassed > 2) {
+                throw new IOException("Payload index points at a missing sample: " + target + "us");
+            }
+            if ((extractor.getSampleFlags() & MediaExtractor.SAMPLE_FLAG_SYNC) != 0) {
+                syncSamplesPassed++;
+            }
+            extractor.advance();
+        }
+        int offset = index.offsets[s];
+        int end = index.segmentEnd(s);
+        while (offset < end) {
+            if (!sample.read(extractor, pool)) {
+                throw new IOException("Incomplete data extraction: got " + offset + " of " + index.dataLength + " bytes");
+            }
+            if (VideoPayloadPlan.carries(sample.info)) {
+                int size = sample.info.size;
+                int bytes = Math.min(VideoPayloadPlan.bytesFor(size), end - offset);
+                SampleCodec.extractBytes(sample.buffer, VideoPayloadPlan.dataOffset(size), output, offset, bytes);
+                offset += bytes;
             }
+            extractor.advance();
         }
-        return b;
     }
 
-    private String computeHash(byte[] data) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] hash = md.digest(data);
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) hexString.append('0');
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (Exception e) {
-            Log.e(TAG, "Error computing hash", e);
-            return "error";
+    /**
+     * Embed stage of the hide pipeline. Passes other tracks through, writes
+     * the indexed header into the planned header frame and spreads the
+     * payload over the carrying samples after it, exactly as
+     * {@link VideoPayloadPlan#layout} predicted.
+     */
+    private static final class PayloadEmbedder implements SamplePipeline.Transform {
+        private final byte[] dataToHide;
+        private final VideoPayloadPlan.Layout layout;
+        private final int videoTrackIndex;
+        private final ProgressListener listener;
+        private int videoSamples;
+        int dataOffset;
+        // Time spent writing LSBs, a share of the remux pass.
+        long embedNanos;
+
+        PayloadEmbedder(byte[] dataToHide, VideoPayloadPlan.Layout layout, int videoTrackIndex, ProgressListener listener) {
+            this.dataToHide = dataToHide;
+            this.layout = layout;
+            this.videoTrackIndex = videoTrackIndex;
+            this.listener = listener;
+        }
+
+        @Override
+        public void apply(MediaSample sample) {
+            if (sample.trackIndex != videoTrackIndex) {
+                return;
+            }
+            int ordinal = videoSamples++;
+            if (ordinal < layout.headerOrdinal) {
+                return;
+            }
+            if (ordinal == layout.headerOrdinal) {
+                SampleCodec.embedBytes(sample.buffer, 0, layout.header, 0, layout.header.length);
+                return;
+            }
+            if (dataOffset >= dataToHide.length || !VideoPayloadPlan.carries(sample.info)) {
+                return;
+            }
+            int size = sample.info.size;
+            int bytesToEmbed = Math.min(VideoPayloadPlan.bytesFor(size), dataToHide.length - dataOffset);
+            long start = System.nanoTime();
+            SampleCodec.embedBytes(sample.buffer, VideoPayloadPlan.dataOffset(size), dataToHide, dataOffset, bytesToEmbed);
+            embedNanos += System.nanoTime() - start;
+            dataOffset += bytesToEmbed;
+            listener.onProgress("embed", dataOffset, dataToHide.length);
         }
     }
 }
\ No newline at end of file
@@ -20,6 +20,8 @@ plugins {
     id("dev.flutter.flutter-plugin-loader") version "1.0.0"
     id("com.android.application") version "8.7.0" apply false
     id("org.jetbrains.kotlin.android") version "1.8.22" apply false
+    id("me.champeau.jmh") version "0.7.2" apply false
 }
 
 include(":app")
+include(":stego-core")
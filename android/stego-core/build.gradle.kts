@@ -0,0 +1,31 @@
+// Android-free core of the steganography code: bit packing, payload
+// compression and header handling. Unit tests run on the desktop JVM with
+// ./gradlew :stego-core:test. Benchmarks run on the desktop JVM with
+// ./gradlew :stego-core:jmh, which writes a JSON report to results/jmh in
+// the module's build directory.
+plugins {
+    `java-library`
+    id("me.champeau.jmh")
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    api("org.lz4:lz4-java:1.8.0")
+    testImplementation("junit:junit:4.13.2")
+}
+
+jmh {
+    jmhVersion.set("1.37")
+    // Allocation rate (gc.alloc.rate.norm) next to ops/s for every benchmark.
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    // -Pjmh.includes=PayloadCodec narrows the run to matching benchmarks.
+    (findProperty("jmh.includes") as String?)?.let { includes.add(it) }
+}
@@ -0,0 +1,120 @@
+package com.example.stegoapp.steganography;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Embed and extract throughput of the whole-frame path, swept over payload
+ * size, carrier size and worker count. {@code packing} compares the
+ * group-at-a-time {@link PixelCodec} against the bit-at-a-time reference it
+ * replaced, which is split into one bit range per worker.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BitPackingBenchmark {
+    @Param({"1024", "65536", "1048576"})
+    public int payloadBytes;
+
+    // 4 MP and 12 MP carriers; both hold the largest payload.
+    @Param({"4194304", "12582912"})
+    public int carrierPixels;
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Param({"packed", "bitwise"})
+    public String packing;
+
+    private ForkJoinPool pool;
+    private PixelEmbedder embedder;
+    private ByteBuffer pixels;
+    private byte[] payload;
+    private byte[] output;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (payloadBytes > PixelEmbedder.capacity(carrierPixels, 1)) {
+            throw new IllegalStateException(payloadBytes + " bytes do not fit in " + carrierPixels + " pixels");
+        }
+        pool = new ForkJoinPool(threads);
+        embedder = new PixelEmbedder(pool, new TaskGranularity());
+        Random random = new Random(42);
+        byte[] carrier = new byte[carrierPixels * 4];
+        random.nextBytes(carrier);
+        pixels = ByteBuffer.allocateDirect(carrier.length).order(ByteOrder.nativeOrder());
+        pixels.put(carrier).clear();
+        payload = new byte[payloadBytes];
+        random.nextBytes(payload);
+        output = new byte[payloadBytes];
+        embedder.embedPayload(pixels, payload);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Benchmark
+    public ByteBuffer embed() {
+        if (packing.equals("packed")) {
+            embedder.embedPayload(pixels, payload);
+        } else {
+            forEachBitRange(payloadBytes * 8, (from, to) -> PixelEmbedder.embedDataParallel(
+                    pixels, payload, PixelEmbedder.LENGTH_BITS, from, to));
+        }
+        return pixels;
+    }
+
+    @Benchmark
+    public byte[] extract() {
+        if (packing.equals("packed")) {
+            embedder.extractPayload(pixels, output, LsbLayout.DEFAULT);
+        } else {
+            forEachBitRange(payloadBytes * 8, (from, to) -> PixelEmbedder.extractDataParallel(
+                    pixels, output, PixelEmbedder.LENGTH_BITS, from, to));
+        }
+        return output;
+    }
+
+    @Benchmark
+    public int readHeader() {
+        return embedder.readHeader(pixels);
+    }
+
+    private interface BitRange {
+        void run(int fromBit, int toBit);
+    }
+
+    private void forEachBitRange(int bits, BitRange range) {
+        if (threads == 1) {
+            range.run(0, bits);
+            return;
+        }
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[threads];
+        int step = (bits + threads - 1) / threads;
+        for (int t = 0; t < threads; t++) {
+            int from = Math.min(bits, t * step);
+            int to = Math.min(bits, from + step);
+            tasks[t] = pool.submit(() -> range.run(from, to));
+        }
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.stegoapp.steganography;
+
+import net.jpountz.lz4.LZ4Factory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Container encode and decode throughput per codec, for compressible text
+ * and for incompressible bytes. {@code auto} runs the entropy-based choice
+ * under the default budget. Concurrent callers are measured with JMH's
+ * own thread option, e.g. {@code -t 4}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PayloadCodecBenchmark {
+    private static final String[] WORDS = {
+            "the", "secret", "message", "is", "hidden", "in", "plain", "sight", "of", "every",
+            "pixel", "and", "only", "the", "receiver", "knows", "where", "to", "look", "for", "it",
+    };
+
+    @Param({"1024", "65536", "1048576"})
+    public int payloadBytes;
+
+    @Param({"stored", "lz4", "lz4hc", "deflate1", "deflate6", "deflate9", "auto"})
+    public String codec;
+
+    @Param({"text", "random"})
+    public String content;
+
+    private PayloadCodec payloadCodec;
+    private PayloadCodec.Choice choice;
+    private byte[] payload;
+    private byte[] container;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        payloadCodec = new PayloadCodec(LZ4Factory.fastestInstance());
+        choice = codec.equals("auto") ? null : PayloadCodec.Choice.parse(codec);
+        payload = content.equals("text") ? text(payloadBytes) : random(payloadBytes);
+        container = encode();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return payloadCodec.encode(payload, null, choice, PayloadCodec.DEFAULT_BUDGET_MS);
+    }
+
+    @Benchmark
+    public byte[] decode() throws IOException {
+        return payloadCodec.decode(container);
+    }
+
+    private static byte[] text(int length) {
+        Random random = new Random(42);
+        StringBuilder text = new StringBuilder(length + 16);
+        while (text.length() < length) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] result = new byte[length];
+        System.arraycopy(bytes, 0, result, 0, length);
+        return result;
+    }
+
+    private static byte[] random(int length) {
+        byte[] result = new byte[length];
+        new Random(42).nextBytes(result);
+        return result;
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.stegoapp.steganography;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Per-sample LSB embed and extract of the video path, on heap and direct buffers. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SampleCodecBenchmark {
+    @Param({"1024", "16384", "131072"})
+    public int payloadBytes;
+
+    @Param({"heap", "direct"})
+    public String buffer;
+
+    private ByteBuffer sample;
+    private byte[] payload;
+    private byte[] output;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        byte[] bytes = new byte[payloadBytes * 8];
+        random.nextBytes(bytes);
+        sample = buffer.equals("direct") ? ByteBuffer.allocateDirect(bytes.length) : ByteBuffer.allocate(bytes.length);
+        sample.put(bytes).clear();
+        payload = new byte[payloadBytes];
+        random.nextBytes(payload);
+        output = new byte[payloadBytes];
+    }
+
+    @Benchmark
+    public ByteBuffer embedBytes() {
+        SampleCodec.embedBytes(sample, 0, payload, 0, payloadBytes);
+        return sample;
+    }
+
+    @Benchmark
+    public byte[] extractBytes() {
+        SampleCodec.extractBytes(sample, 0, output, 0, payloadBytes);
+        return output;
+    }
+}
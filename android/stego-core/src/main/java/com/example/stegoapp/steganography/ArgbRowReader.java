@@ -0,0 +1,19 @@
+package com.example.stegoapp.steganography;
+
+import java.io.IOException;
+
+/**
+ * Source of a carrier's pixels a band of rows at a time, so a
+ * {@link TiledCarrier} never needs the whole frame decoded.
+ */
+public interface ArgbRowReader {
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * Decodes rows {@code [top, bottom)} as non-premultiplied {@code 0xAARRGGBB}
+     * ints into {@code dst}, starting at {@code offset}.
+     */
+    void decodeArgbRows(int top, int bottom, int[] dst, int offset) throws IOException;
+}
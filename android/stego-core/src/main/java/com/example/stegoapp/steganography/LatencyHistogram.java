@@ -0,0 +1,93 @@
+package com.example.stegoapp.steganography;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear latency histogram in the style of HdrHistogram.
+ * Values are kept in microseconds, exactly below 64 us and in 32 buckets
+ * per power of two above that, so any reported percentile is within about
+ * 3% of the true value. Recording is two atomic adds and never allocates.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 6;
+    private static final int HALF_COUNT = 1 << (SUB_BITS - 1);
+    // About 19 hours; longer values are clamped.
+    private static final long MAX_MICROS = (1L << 36) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(indexFor(MAX_MICROS) + 1);
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        long micros = Math.min(MAX_MICROS, Math.max(0, nanos / 1000));
+        counts.incrementAndGet(indexFor(micros));
+        totalMicros.add(micros);
+        if (micros > maxMicros.get()) {
+            maxMicros.accumulateAndGet(micros, Math::max);
+        }
+    }
+
+    static int indexFor(long micros) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(micros) - (SUB_BITS - 1));
+        return (int) (shift * HALF_COUNT + (micros >>> shift));
+    }
+
+    /** Largest value that lands in bucket {@code index}. */
+    static long highestValueAt(int index) {
+        if (index < 2 * HALF_COUNT) {
+            return index;
+        }
+        int shift = index / HALF_COUNT - 1;
+        long sub = index - (long) shift * HALF_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Value in microseconds at or below which {@code percentile} percent of
+     * the recorded values fall, or 0 if nothing has been recorded.
+     */
+    public long percentileMicros(double percentile) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(highestValueAt(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    public long getCount() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    public Map<String, Object> getStats() {
+        long count = getCount();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("count", count);
+        stats.put("meanMs", count == 0 ? 0.0 : totalMicros.sum() / 1000.0 / count);
+        stats.put("p50Ms", percentileMicros(50) / 1000.0);
+        stats.put("p90Ms", percentileMicros(90) / 1000.0);
+        stats.put("p99Ms", percentileMicros(99) / 1000.0);
+        stats.put("maxMs", maxMicros.get() / 1000.0);
+        return stats;
+    }
+}
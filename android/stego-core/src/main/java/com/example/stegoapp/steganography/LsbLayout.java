@@ -0,0 +1,91 @@
+package com.example.stegoapp.steganography;
+
+/**
+ * How many low bits of which channels carry payload: 1-4 LSBs of R, G and B,
+ * optionally of alpha too. The default, 1 bit of R, G and B, is the original
+ * layout; anything else trades imperceptibility for carrying the payload
+ * in fewer pixels.
+ *
+ * The layout travels in the 32-bit length header. A header with the top bit
+ * clear is a plain length in the default layout, as written before layouts
+ * existed. Otherwise bit 30 is the alpha flag, bits 28-29 the depth minus
+ * one and bits 0-27 the length.
+ */
+public final class LsbLayout {
+    public static final int MAX_DEPTH = 4;
+    public static final LsbLayout DEFAULT = new LsbLayout(1, false);
+
+    private static final int EXTENDED_FLAG = 1 << 31;
+    private static final int ALPHA_FLAG = 1 << 30;
+    private static final int DEPTH_SHIFT = 28;
+    private static final int LENGTH_MASK = (1 << DEPTH_SHIFT) - 1;
+
+    public final int depth;
+    public final boolean alpha;
+    public final int channels;
+    public final int bitsPerPixel;
+    /** Smallest run of pixels that carries a whole number of payload bytes. */
+    public final int pixelsPerGroup;
+    public final int bytesPerGroup;
+
+    private LsbLayout(int depth, boolean alpha) {
+        this.depth = depth;
+        this.alpha = alpha;
+        this.channels = alpha ? 4 : 3;
+        this.bitsPerPixel = channels * depth;
+        int pixels = 1;
+        while (pixels * bitsPerPixel % 8 != 0) {
+            pixels *= 2;
+        }
+        this.pixelsPerGroup = pixels;
+        this.bytesPerGroup = pixels * bitsPerPixel / 8;
+    }
+
+    public static LsbLayout of(int depth, boolean alpha) {
+        if (depth < 1 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("LSB depth must be 1-" + MAX_DEPTH + ": " + depth);
+        }
+        return depth == 1 && !alpha ? DEFAULT : new LsbLayout(depth, alpha);
+    }
+
+    public boolean isDefault() {
+        return depth == 1 && !alpha;
+    }
+
+    /** Header word for a payload of {@code length} bytes in this layout. */
+    public int headerValue(int length) {
+        if (isDefault()) {
+            return length;
+        }
+        if (length < 0 || length > LENGTH_MASK) {
+            throw new IllegalArgumentException("Payload too large for the layout header: " + length);
+        }
+        return EXTENDED_FLAG | (alpha ? ALPHA_FLAG : 0) | (depth - 1) << DEPTH_SHIFT | length;
+    }
+
+    public static LsbLayout fromHeader(int header) {
+        if ((header & EXTENDED_FLAG) == 0) {
+            return DEFAULT;
+        }
+        return of(((header >>> DEPTH_SHIFT) & 3) + 1, (header & ALPHA_FLAG) != 0);
+    }
+
+    public static int lengthFromHeader(int header) {
+        return (header & EXTENDED_FLAG) == 0 ? header : header & LENGTH_MASK;
+    }
+
+    /** Number of pixels needed to carry {@code byteCount} payload bytes. */
+    public int pixelsFor(int byteCount) {
+        return (int) (((long) byteCount * 8 + bitsPerPixel - 1) / bitsPerPixel);
+    }
+
+    /** Payload bytes that fit after the header in {@code pixelCount} pixels. */
+    public long capacity(long pixelCount, int headerPixels) {
+        return Math.max(0, (pixelCount - headerPixels) * bitsPerPixel / 8);
+    }
+
+    @Override
+    public String toString() {
+        return depth + (alpha ? "bit-rgba" : "bit-rgb");
+    }
+}
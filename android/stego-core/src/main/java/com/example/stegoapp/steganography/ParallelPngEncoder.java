@@ -0,0 +1,367 @@
+package com.example.stegoapp.steganography;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Streaming RGBA PNG writer that filters and deflates row bands in parallel,
+ * pigz-style. Each band is compressed independently and ends on a sync
+ * flush, so the compressed bands concatenate into one valid zlib stream;
+ * the Adler-32 of the whole stream is combined from the per-band checksums.
+ * Output is lossless, so embedded LSBs survive unchanged. Rows come from a
+ * {@link RowSource}; the app supplies ones backed by Android bitmaps.
+ */
+public class ParallelPngEncoder {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    static final int TARGET_BAND_BYTES = 512 * 1024;
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_AVERAGE = 3;
+    private static final int FILTER_PAETH = 4;
+
+    /** Supplies image rows as non-premultiplied RGBA bytes. Must be safe for concurrent reads. */
+    public interface RowSource {
+        int getWidth();
+
+        int getHeight();
+
+        /** Copies rows {@code [y, y + rows)} into {@code dst}, {@code 4 * width} bytes per row. */
+        void readRows(int y, int rows, byte[] dst) throws IOException;
+    }
+
+    /** Told about each compressed band, on the thread that compressed it. */
+    public interface BandListener {
+        void onBand(long startNanos, long endNanos, long rawBytes);
+    }
+
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final int targetBandBytes;
+    private final BandListener bandListener;
+
+    public ParallelPngEncoder(ExecutorService executor, int parallelism) {
+        this(executor, parallelism, null);
+    }
+
+    public ParallelPngEncoder(ExecutorService executor, int parallelism, BandListener bandListener) {
+        this(executor, parallelism, TARGET_BAND_BYTES, bandListener);
+    }
+
+    ParallelPngEncoder(ExecutorService executor, int parallelism, int targetBandBytes, BandListener bandListener) {
+        this.executor = executor;
+        this.parallelism = Math.max(1, parallelism);
+        this.targetBandBytes = targetBandBytes;
+        this.bandListener = bandListener;
+    }
+
+    /**
+     * Row source over an ARGB_8888 pixel buffer as filled by
+     * {@code Bitmap.copyPixelsToBuffer}, i.e. premultiplied RGBA bytes.
+     * Translucent pixels are un-premultiplied the same way
+     * {@code Bitmap.compress} does it.
+     */
+    public static RowSource fromPixelBuffer(ByteBuffer pixelBuffer, int width, int height) {
+        return fromPixelBuffer(pixelBuffer, width, height, true);
+    }
+
+    /** As above; pass false for a buffer copied from a non-premultiplied bitmap, whose bytes are written as-is. */
+    public static RowSource fromPixelBuffer(ByteBuffer pixelBuffer, int width, int height, boolean premultiplied) {
+        return new RowSource() {
+            @Override
+            public int getWidth() {
+                return width;
+            }
+
+            @Override
+            public int getHeight() {
+                return height;
+            }
+
+            @Override
+            public void readRows(int y, int rows, byte[] dst) {
+                ByteBuffer view = pixelBuffer.duplicate();
+                view.clear();
+                view.position(y * width * 4);
+                int length = rows * width * 4;
+                view.get(dst, 0, length);
+                if (premultiplied) {
+                    unpremultiply(dst, length);
+                }
+            }
+        };
+    }
+
+    /** Reorders {@code count} {@code 0xAARRGGBB} ints into RGBA bytes. */
+    static void argbToRgba(int[] argb, int count, byte[] dst) {
+        for (int i = 0, o = 0; i < count; i++, o += 4) {
+            int p = argb[i];
+            dst[o] = (byte) (p >>> 16);
+            dst[o + 1] = (byte) (p >>> 8);
+            dst[o + 2] = (byte) p;
+            dst[o + 3] = (byte) (p >>> 24);
+        }
+    }
+
+    static void unpremultiply(byte[] rgba, int length) {
+        for (int i = 3; i < length; i += 4) {
+            int a = rgba[i] & 0xFF;
+            if (a == 0xFF) {
+                continue;
+            }
+            if (a == 0) {
+                rgba[i - 3] = 0;
+                rgba[i - 2] = 0;
+                rgba[i - 1] = 0;
+                continue;
+            }
+            for (int c = i - 3; c < i; c++) {
+                rgba[c] = (byte) Math.min(255, ((rgba[c] & 0xFF) * 255 + a / 2) / a);
+            }
+        }
+    }
+
+    public void encode(RowSource source, OutputStream out, int level) throws IOException {
+        if (level < 0 || level > 9) {
+            throw new IllegalArgumentException("PNG compression level must be 0-9: " + level);
+        }
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int rowBytes = width * 4;
+        int bandRows = Math.max(1, Math.min(height, targetBandBytes / Math.max(1, rowBytes)));
+        int bandCount = (height + bandRows - 1) / bandRows;
+
+        out.write(SIGNATURE);
+        ByteBuffer ihdr = ByteBuffer.allocate(13);
+        ihdr.putInt(width).putInt(height);
+        ihdr.put((byte) 8).put((byte) 6).put((byte) 0).put((byte) 0).put((byte) 0);
+        writeChunk(out, "IHDR", ihdr.array(), 0, 13);
+
+        byte[] zlibHeader = {0x78, zlibFlags(level)};
+        writeChunk(out, "IDAT", zlibHeader, 0, zlibHeader.length);
+
+        ArrayDeque<Future<Band>> inFlight = new ArrayDeque<>();
+        int nextBand = 0;
+        long adler = 1;
+        try {
+            while (nextBand < bandCount || !inFlight.isEmpty()) {
+                while (nextBand < bandCount && inFlight.size() < parallelism * 2) {
+                    int y = nextBand * bandRows;
+                    int rows = Math.min(bandRows, height - y);
+                    boolean last = nextBand == bandCount - 1;
+                    inFlight.add(executor.submit(() -> compressBand(source, y, rows, level, last)));
+                    nextBand++;
+                }
+                Band band = inFlight.poll().get();
+                writeChunk(out, "IDAT", band.data, 0, band.length);
+                adler = combineAdler32(adler, band.adler, band.rawLength);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("PNG encoding interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("PNG encoding failed", e.getCause());
+        } finally {
+            for (Future<Band> pending : inFlight) {
+                pending.cancel(true);
+            }
+        }
+
+        byte[] trailer = ByteBuffer.allocate(4).putInt((int) adler).array();
+        writeChunk(out, "IDAT", trailer, 0, trailer.length);
+        writeChunk(out, "IEND", new byte[0], 0, 0);
+        out.flush();
+    }
+
+    private static final class Band {
+        byte[] data;
+        int length;
+        long adler;
+        long rawLength;
+    }
+
+    private Band compressBand(RowSource source, int y, int rows, int level, boolean last) throws IOException {
+        long start = bandListener != null ? System.nanoTime() : 0;
+        int rowBytes = source.getWidth() * 4;
+        boolean hasPrevious = y > 0;
+        byte[] raw = new byte[(rows + (hasPrevious ? 1 : 0)) * rowBytes];
+        source.readRows(hasPrevious ? y - 1 : y, rows + (hasPrevious ? 1 : 0), raw);
+
+        int stride = rowBytes + 1;
+        byte[] filtered = new byte[rows * stride];
+        byte[] zeroRow = hasPrevious ? null : new byte[rowBytes];
+        int rawStart = hasPrevious ? rowBytes : 0;
+        for (int r = 0; r < rows; r++) {
+            int cur = rawStart + r * rowBytes;
+            byte[] prevRow = (r == 0 && !hasPrevious) ? zeroRow : raw;
+            int prev = (r == 0 && !hasPrevious) ? 0 : cur - rowBytes;
+            filterRow(raw, cur, prevRow, prev, rowBytes, filtered, r * stride, level);
+        }
+
+        Adler32 checksum = new Adler32();
+        checksum.update(filtered, 0, filtered.length);
+
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(filtered);
+            if (last) {
+                deflater.finish();
+            }
+            byte[] out = new byte[filtered.length / 2 + 1024];
+            int length = 0;
+            while (true) {
+                if (length == out.length) {
+                    byte[] grown = new byte[out.length * 2];
+                    System.arraycopy(out, 0, grown, 0, length);
+                    out = grown;
+                }
+                int available = out.length - length;
+                int n = last
+                        ? deflater.deflate(out, length, available)
+                        : deflater.deflate(out, length, available, Deflater.SYNC_FLUSH);
+                length += n;
+                // A sync flush is complete once it leaves output space unused.
+                if (last ? deflater.finished() : n < available) {
+                    break;
+                }
+            }
+            Band band = new Band();
+            band.data = out;
+            band.length = length;
+            band.adler = checksum.getValue();
+            band.rawLength = filtered.length;
+            if (bandListener != null) {
+                bandListener.onBand(start, System.nanoTime(), filtered.length);
+            }
+            return band;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void filterRow(byte[] raw, int cur, byte[] prevRow, int prev, int rowBytes,
+                                  byte[] out, int outPos, int level) {
+        if (level == 0) {
+            out[outPos] = FILTER_NONE;
+            System.arraycopy(raw, cur, out, outPos + 1, rowBytes);
+            return;
+        }
+        if (level <= 3) {
+            applyFilter(FILTER_SUB, raw, cur, prevRow, prev, rowBytes, out, outPos);
+            return;
+        }
+        // Adaptive selection: keep the filter with the smallest sum of
+        // absolute (signed) residuals, the heuristic libpng uses.
+        int bestFilter = FILTER_NONE;
+        long bestScore = Long.MAX_VALUE;
+        for (int filter = FILTER_NONE; filter <= FILTER_PAETH; filter++) {
+            applyFilter(filter, raw, cur, prevRow, prev, rowBytes, out, outPos);
+            long score = 0;
+            for (int i = 1; i <= rowBytes && score < bestScore; i++) {
+                score += Math.abs((int) out[outPos + i]);
+            }
+            if (score < bestScore) {
+                bestScore = score;
+                bestFilter = filter;
+            }
+        }
+        if (bestFilter != FILTER_PAETH) {
+            applyFilter(bestFilter, raw, cur, prevRow, prev, rowBytes, out, outPos);
+        }
+    }
+
+    private static void applyFilter(int filter, byte[] raw, int cur, byte[] prevRow, int prev, int rowBytes,
+                                    byte[] out, int outPos) {
+        out[outPos] = (byte) filter;
+        int o = outPos + 1;
+        switch (filter) {
+            case FILTER_NONE:
+                System.arraycopy(raw, cur, out, o, rowBytes);
+                break;
+            case FILTER_SUB:
+                for (int i = 0; i < rowBytes; i++) {
+                    int left = i >= 4 ? raw[cur + i - 4] & 0xFF : 0;
+                    out[o + i] = (byte) ((raw[cur + i] & 0xFF) - left);
+                }
+                break;
+            case FILTER_UP:
+                for (int i = 0; i < rowBytes; i++) {
+                    out[o + i] = (byte) ((raw[cur + i] & 0xFF) - (prevRow[prev + i] & 0xFF));
+                }
+                break;
+            case FILTER_AVERAGE:
+                for (int i = 0; i < rowBytes; i++) {
+                    int left = i >= 4 ? raw[cur + i - 4] & 0xFF : 0;
+                    int up = prevRow[prev + i] & 0xFF;
+                    out[o + i] = (byte) ((raw[cur + i] & 0xFF) - ((left + up) >>> 1));
+                }
+                break;
+            default:
+                for (int i = 0; i < rowBytes; i++) {
+                    int left = i >= 4 ? raw[cur + i - 4] & 0xFF : 0;
+                    int up = prevRow[prev + i] & 0xFF;
+                    int upLeft = i >= 4 ? prevRow[prev + i - 4] & 0xFF : 0;
+                    out[o + i] = (byte) ((raw[cur + i] & 0xFF) - paeth(left, up, upLeft));
+                }
+                break;
+        }
+    }
+
+    private static int paeth(int a, int b, int c) {
+        int p = a + b - c;
+        int pa = Math.abs(p - a);
+        int pb = Math.abs(p - b);
+        int pc = Math.abs(p - c);
+        if (pa <= pb && pa <= pc) {
+            return a;
+        }
+        return pb <= pc ? b : c;
+    }
+
+    private static byte zlibFlags(int level) {
+        if (level <= 1) {
+            return 0x01;
+        } else if (level <= 5) {
+            return 0x5E;
+        } else if (level == 6) {
+            return (byte) 0x9C;
+        }
+        return (byte) 0xDA;
+    }
+
+    // adler32_combine() from zlib.
+    static long combineAdler32(long adler1, long adler2, long length2) {
+        final long base = 65521;
+        long rem = length2 % base;
+        long sum1 = adler1 & 0xFFFF;
+        long sum2 = (rem * sum1) % base;
+        sum1 += (adler2 & 0xFFFF) + base - 1;
+        sum2 += ((adler1 >>> 16) & 0xFFFF) + ((adler2 >>> 16) & 0xFFFF) + base - rem;
+        if (sum1 >= base) sum1 -= base;
+        if (sum1 >= base) sum1 -= base;
+        if (sum2 >= (base << 1)) sum2 -= (base << 1);
+        if (sum2 >= base) sum2 -= base;
+        return sum1 | (sum2 << 16);
+    }
+
+    private static void writeChunk(OutputStream out, String type, byte[] data, int offset, int length) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, offset, length);
+        ByteBuffer header = ByteBuffer.allocate(8);
+        header.putInt(length).put(typeBytes);
+        out.write(header.array());
+        out.write(data, offset, length);
+        out.write(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+    }
+}
@@ -0,0 +1,657 @@
+package com.example.stegoapp.steganography;
+
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Self-describing compression container shared by the image and video
+ * paths. Layout (big-endian):
+ *
+ * <pre>
+ *   u8  magic (0xC5, never a legacy flag value)
+ *   u8  version
+ *   u8  codec id
+ *   u8  codec level
+ *   i32 original length
+ *   i32 body length
+ *   u8  MIME type length, then the ASCII MIME type (version 2 only)
+ *   ... body
+ * </pre>
+ *
+ * Version 1 containers carry no MIME type; they are still written for
+ * text payloads, where the type is implied.
+ *
+ * Pure JVM code with no Android dependency, so it lives in {@code stego-core}
+ * and can be benchmarked off-device.
+ *
+ * LZ4 bodies use the lz4-java block stream framing and Deflate bodies are
+ * zlib streams, so every codec can also be decoded incrementally: the
+ * {@code decodeTo} methods pull a container from a stream and write the
+ * original bytes to a sink in fixed-size chunks.
+ */
+public class PayloadCodec {
+    public static final int MAGIC = 0xC5;
+    public static final int VERSION = 1;
+    public static final int VERSION_WITH_MIME = 2;
+    public static final int HEADER_SIZE = 12;
+    private static final int MAX_MIME_LENGTH = 255;
+    public static final int MAX_ORIGINAL_LENGTH = 100_000_000;
+    public static final long DEFAULT_BUDGET_MS = 100;
+    public static final String MIME_OCTET_STREAM = "application/octet-stream";
+
+    public static final int STREAM_CHUNK_BYTES = 64 * 1024;
+
+    private static final int MIN_COMPRESS_LENGTH = 512;
+    private static final int LZ4_BLOCK_SIZE = 64 * 1024;
+    private static final int LZ4_HC_LEVEL = 9;
+    private static final int ENTROPY_SAMPLE_BYTES = 64 * 1024;
+    private static final int ENTROPY_SAMPLE_STRIDE = 4 * 1024;
+    // Above this many bits per byte the payload is effectively compressed already.
+    private static final double STORE_ENTROPY_BITS = 7.5;
+    private static final double FAST_ENTROPY_BITS = 6.5;
+
+    public enum Codec {
+        STORED(0, 0),
+        LZ4_FAST(1, 400),
+        LZ4_HC(2, 30),
+        DEFLATE(3, 0);
+
+        final int id;
+        // Rough single-core throughput on a mid-range phone, used against the latency budget.
+        final int megabytesPerSecond;
+
+        Codec(int id, int megabytesPerSecond) {
+            this.id = id;
+            this.megabytesPerSecond = megabytesPerSecond;
+        }
+
+        static Codec fromId(int id) {
+            for (Codec codec : values()) {
+                if (codec.id == id) {
+                    return codec;
+                }
+            }
+            throw new IllegalArgumentException("Unknown codec id: " + id);
+        }
+    }
+
+    /** A codec together with its level. */
+    public static final class Choice {
+        public static final Choice STORED = new Choice(Codec.STORED, 0);
+
+        public final Codec codec;
+        public final int level;
+
+        public Choice(Codec codec, int level) {
+            if (codec == Codec.DEFLATE && (level < 1 || level > 9)) {
+                throw new IllegalArgumentException("Deflate level must be 1-9: " + level);
+            }
+            this.codec = codec;
+            this.level = level;
+        }
+
+        /** Parses "stored", "lz4", "lz4hc" or "deflate1".."deflate9". */
+        public static Choice parse(String name) {
+            String value = name.toLowerCase(Locale.ROOT);
+            switch (value) {
+                case "stored":
+                    return STORED;
+                case "lz4":
+                    return new Choice(Codec.LZ4_FAST, 0);
+                case "lz4hc":
+                    return new Choice(Codec.LZ4_HC, LZ4_HC_LEVEL);
+                default:
+                    if (value.startsWith("deflate") && value.length() == 8) {
+                        return new Choice(Codec.DEFLATE, value.charAt(7) - '0');
+                    }
+                    throw new IllegalArgumentException("Unknown compression: " + name);
+            }
+        }
+
+        long estimateNanos(long length) {
+            int mbps = codec == Codec.DEFLATE ? deflateMegabytesPerSecond(level) : codec.megabytesPerSecond;
+            return mbps == 0 ? 0 : length * 1000L / mbps;
+        }
+
+        private static int deflateMegabytesPerSecond(int level) {
+            return level <= 1 ? 60 : level <= 3 ? 45 : level <= 6 ? 25 : 8;
+        }
+
+        @Override
+        public String toString() {
+            switch (codec) {
+                case LZ4_FAST:
+                    return "lz4";
+                case LZ4_HC:
+                    return "lz4hc";
+                case DEFLATE:
+                    return "deflate" + level;
+                default:
+                    return "stored";
+            }
+        }
+    }
+
+    /** A decoded payload and the MIME type recorded with it, if any. */
+    public static final class Decoded {
+        public final byte[] data;
+        public final String mimeType;
+
+        public Decoded(byte[] data, String mimeType) {
+            this.data = data;
+            this.mimeType = mimeType;
+        }
+    }
+
+    /** What a streaming decode wrote to its sink. */
+    public static final class Streamed {
+        public final long length;
+        public final String mimeType;
+
+        public Streamed(long length, String mimeType) {
+            this.length = length;
+            this.mimeType = mimeType;
+        }
+    }
+
+    /** A secret that can be read as a stream, of known or unknown length. */
+    public interface Source {
+        InputStream openStream() throws IOException;
+
+        /** Length in bytes, or -1 if unknown. */
+        long getLength();
+
+        String getMimeType();
+    }
+
+    // Strongest first; the first one that fits the budget wins.
+    private static final Choice[] CANDIDATES = {
+            new Choice(Codec.DEFLATE, 9),
+            new Choice(Codec.DEFLATE, 6),
+            new Choice(Codec.LZ4_HC, LZ4_HC_LEVEL),
+            new Choice(Codec.DEFLATE, 1),
+            new Choice(Codec.LZ4_FAST, 0),
+    };
+
+    private final LZ4Factory lz4Factory;
+
+    public PayloadCodec(LZ4Factory lz4Factory) {
+        this.lz4Factory = lz4Factory;
+    }
+
+    /**
+     * Picks a codec from a sampled byte entropy and a latency budget: dense
+     * payloads (PNG, JPEG, archives) are stored, mid-entropy ones get LZ4,
+     * and the rest get the strongest codec whose estimated time fits.
+     */
+    public Choice choose(byte[] data, long budgetMs) {
+        return choose(data, data.length, data.length, budgetMs);
+    }
+
+    /** Same as {@link #choose(byte[], long)} for a payload of which only a prefix is in memory. */
+    Choice choose(byte[] sample, int sampleLength, long totalLength, long budgetMs) {
+        if (totalLength < MIN_COMPRESS_LENGTH) {
+            return Choice.STORED;
+        }
+        double entropy = sampleEntropy(sample, sampleLength);
+        if (entropy >= STORE_ENTROPY_BITS) {
+            return Choice.STORED;
+        }
+        if (entropy >= FAST_ENTROPY_BITS) {
+            return new Choice(Codec.LZ4_FAST, 0);
+        }
+        long budgetNanos = budgetMs * 1_000_000L;
+        for (Choice candidate : CANDIDATES) {
+            if (candidate.estimateNanos(totalLength) <= budgetNanos) {
+                return candidate;
+            }
+        }
+        return new Choice(Codec.LZ4_FAST, 0);
+    }
+
+    /** Encodes with {@code choice}, or with {@link #choose} under {@code budgetMs} when it is null. */
+    public byte[] encode(byte[] data, String mimeType, Choice choice, long budgetMs) {
+        return encode(data, mimeType, choice != null ? choice : choose(data, budgetMs));
+    }
+
+    public byte[] encode(byte[] data, Choice choice) {
+        return encode(data, null, choice);
+    }
+
+    public byte[] encode(byte[] data, String mimeType, Choice choice) {
+        if (choice.codec != Codec.STORED) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream(data.length / 2 + 64);
+            try (OutputStream out = openCompressor(body, choice)) {
+                out.write(data);
+            } catch (IOException e) {
+                throw new IllegalStateException("In-memory compression failed", e);
+            }
+            if (body.size() < data.length) {
+                return wrap(choice, mimeType, data.length, body.toByteArray(), body.size());
+            }
+        }
+        return wrap(Choice.STORED, mimeType, data.length, data, data.length);
+    }
+
+    /**
+     * Streams a secret straight from its source into the compressor, so the
+     * original bytes are never held in memory next to the compressed ones.
+     * The codec is chosen from the first {@code ENTROPY_SAMPLE_BYTES}.
+     */
+    public byte[] encode(Source source, Choice choice, long budgetMs) throws IOException {
+        try (InputStream in = source.openStream()) {
+            byte[] prefix = new byte[ENTROPY_SAMPLE_BYTES];
+            int prefixLength = readFully(in, prefix);
+            long expectedLength = source.getLength() >= 0 ? source.getLength() : prefixLength;
+            if (choice == null) {
+                choice = choose(prefix, prefixLength, expectedLength, budgetMs);
+            }
+
+            ByteArrayOutputStream body = new ByteArrayOutputStream(
+                    (int) Math.min(Math.max(expectedLength, prefixLength), MAX_ORIGINAL_LENGTH) + 64);
+            long originalLength = prefixLength;
+            try (OutputStream out = openCompressor(body, choice)) {
+                out.write(prefix, 0, prefixLength);
+                int n;
+                while ((n = in.read(prefix)) != -1) {
+                    out.write(prefix, 0, n);
+                    originalLength += n;
+                    if (originalLength > MAX_ORIGINAL_LENGTH) {
+                        throw new IOException("Secret too large: more than " + MAX_ORIGINAL_LENGTH + " bytes");
+                    }
+                }
+            }
+            if (choice.codec != Codec.STORED && body.size() >= originalLength) {
+                // Compression did not pay off; read the source again instead of keeping a second copy.
+                return encode(source, Choice.STORED, budgetMs);
+            }
+            return wrap(choice, source.getMimeType(), (int) originalLength, body.toByteArray(), body.size());
+        }
+    }
+
+    public static boolean isContainer(byte[] data) {
+        return data.length >= HEADER_SIZE && (data[0] & 0xFF) == MAGIC;
+    }
+
+    public byte[] decode(byte[] container) throws IOException {
+        return decodePayload(container).data;
+    }
+
+    /**
+     * Decodes a container, or one of the older flag-byte formats of the image
+     * path (0 = stored, 1 = LZ4 block) written before it existed.
+     */
+    public byte[] decodeImagePayload(byte[] data) {
+        if (data.length < 5) {
+            throw new IllegalArgumentException("Data too short to contain header");
+        }
+
+        int compressionFlag = data[0] & 0xFF;
+
+        if (isContainer(data)) {
+            try {
+                return decode(data);
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+        } else if (compressionFlag == 0) {
+            int originalLength = ByteBuffer.wrap(data, 1, 4).getInt();
+            if (originalLength <= 0 || originalLength > MAX_ORIGINAL_LENGTH || originalLength > data.length - 5) {
+                throw new IllegalArgumentException("Invalid original length: " + originalLength);
+            }
+            byte[] result = new byte[originalLength];
+            System.arraycopy(data, 5, result, 0, originalLength);
+            return result;
+        } else if (compressionFlag == 1) {
+            if (data.length < 9) {
+                throw new IllegalArgumentException("Compressed data too short to contain header");
+            }
+
+            ByteBuffer headerBuffer = ByteBuffer.wrap(data, 1, 8);
+            int originalLength = headerBuffer.getInt();
+            int compressedLength = headerBuffer.getInt();
+
+            if (originalLength <= 0 || originalLength > MAX_ORIGINAL_LENGTH ||
+                compressedLength <= 0 || compressedLength > data.length - 9) {
+                throw new IllegalArgumentException("Invalid decompression sizes");
+            }
+
+            byte[] result = new byte[originalLength];
+            LZ4FastDecompressor decompressor = lz4Factory.fastDecompressor();
+            decompressor.decompress(data, 9, result, 0, originalLength);
+            return result;
+        } else {
+            throw new IllegalArgumentException("Unknown compression flag: " + compressionFlag +
+                                           " (Decimal: " + compressionFlag +
+                                           ", Hex: 0x" + Integer.toHexString(compressionFlag) +
+                                           "). This image may not contain valid steganographic data.");
+        }
+    }
+
+    public Decoded decodePayload(byte[] container) throws IOException {
+        if (!isContainer(container)) {
+            throw new IOException("Not a payload container");
+        }
+        ByteBuffer header = ByteBuffer.wrap(container);
+        header.get();
+        int version = header.get() & 0xFF;
+        if (version != VERSION && version != VERSION_WITH_MIME) {
+            throw new IOException("Unsupported container version: " + version);
+        }
+        Codec codec;
+        try {
+            codec = Codec.fromId(header.get() & 0xFF);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        header.get();
+        int originalLength = header.getInt();
+        int bodyLength = header.getInt();
+        String mimeType = null;
+        if (version == VERSION_WITH_MIME) {
+            int mimeLength = container.length > HEADER_SIZE ? container[HEADER_SIZE] & 0xFF : 0;
+            if (container.length < HEADER_SIZE + 1 + mimeLength) {
+                throw new IOException("Container header truncated");
+            }
+            mimeType = new String(container, HEADER_SIZE + 1, mimeLength, StandardCharsets.US_ASCII);
+        }
+        int bodyOffset = headerLength(mimeType);
+        if (originalLength < 0 || originalLength > MAX_ORIGINAL_LENGTH
+                || bodyLength < 0 || bodyLength > container.length - bodyOffset) {
+            throw new IOException("Invalid container sizes");
+        }
+        if (codec == Codec.STORED && originalLength != bodyLength) {
+            throw new IOException("Stored payload length " + originalLength
+                    + " does not match body length " + bodyLength);
+        }
+
+        byte[] result = new byte[originalLength];
+        if (codec == Codec.STORED) {
+            System.arraycopy(container, bodyOffset, result, 0, originalLength);
+            return new Decoded(result, mimeType);
+        }
+        try (InputStream in = openDecompressor(new ByteArrayInputStream(container, bodyOffset, bodyLength), codec)) {
+            if (readFully(in, result) < originalLength) {
+                throw new IOException("Compressed payload truncated before " + originalLength + " bytes");
+            }
+        }
+        return new Decoded(result, mimeType);
+    }
+
+    /**
+     * Streaming counterpart of {@link #decodePayload}: reads one container
+     * from {@code in} and writes its original bytes to {@code sink}. Memory
+     * use is one chunk plus the decompressor's window, whatever the size.
+     */
+    public Streamed decodeTo(InputStream in, OutputStream sink) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        if (readFully(in, header) < HEADER_SIZE || !isContainer(header)) {
+            throw new IOException("Not a payload container");
+        }
+        ByteBuffer fields = ByteBuffer.wrap(header);
+        int version = header[1] & 0xFF;
+        if (version != VERSION && version != VERSION_WITH_MIME) {
+            throw new IOException("Unsupported container version: " + version);
+        }
+        Codec codec;
+        try {
+            codec = Codec.fromId(header[2] & 0xFF);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+        int originalLength = fields.getInt(4);
+        int bodyLength = fields.getInt(8);
+        String mimeType = null;
+        if (version == VERSION_WITH_MIME) {
+            int mimeLength = in.read();
+            byte[] mime = new byte[Math.max(0, mimeLength)];
+            if (mimeLength < 0 || readFully(in, mime) < mimeLength) {
+                throw new IOException("Container header truncated");
+            }
+            mimeType = new String(mime, StandardCharsets.US_ASCII);
+        }
+        if (originalLength < 0 || originalLength > MAX_ORIGINAL_LENGTH || bodyLength < 0) {
+            throw new IOException("Invalid container sizes");
+        }
+        if (codec == Codec.STORED && originalLength != bodyLength) {
+            throw new IOException("Stored payload length " + originalLength
+                    + " does not match body length " + bodyLength);
+        }
+        InputStream body = new BoundedInputStream(in, bodyLength);
+        try (InputStream decoded = codec == Codec.STORED ? body : openDecompressor(body, codec)) {
+            copy(decoded, sink, originalLength);
+        }
+        return new Streamed(originalLength, mimeType);
+    }
+
+    /**
+     * Streaming counterpart of {@link #decodeImagePayload}. The legacy LZ4
+     * format is a single raw block, so it is still decoded in memory; it
+     * was only ever written for small payloads.
+     */
+    public Streamed decodeImagePayloadTo(InputStream in, OutputStream sink) throws IOException {
+        PushbackInputStream peek = new PushbackInputStream(in, 1);
+        int compressionFlag = peek.read();
+        if (compressionFlag < 0) {
+            throw new IOException("Data too short to contain header");
+        }
+        peek.unread(compressionFlag);
+        if (compressionFlag == MAGIC) {
+            return decodeTo(peek, sink);
+        }
+        byte[] header = new byte[5];
+        if (readFully(peek, header) < header.length) {
+            throw new IOException("Data too short to contain header");
+        }
+        int originalLength = ByteBuffer.wrap(header, 1, 4).getInt();
+        if (compressionFlag == 0) {
+            if (originalLength <= 0 || originalLength > MAX_ORIGINAL_LENGTH) {
+                throw new IOException("Invalid original length: " + originalLength);
+            }
+            copy(peek, sink, originalLength);
+            return new Streamed(originalLength, null);
+        }
+        if (compressionFlag != 1) {
+            throw new IOException("Unknown compression flag: " + compressionFlag
+                    + ". This image may not contain valid steganographic data.");
+        }
+        byte[] rest = new byte[4];
+        if (readFully(peek, rest) < rest.length) {
+            throw new IOException("Compressed data too short to contain header");
+        }
+        int compressedLength = ByteBuffer.wrap(rest).getInt();
+        if (originalLength <= 0 || originalLength > MAX_ORIGINAL_LENGTH
+                || compressedLength <= 0 || compressedLength > MAX_ORIGINAL_LENGTH) {
+            throw new IOException("Invalid decompression sizes");
+        }
+        byte[] legacy = new byte[9 + compressedLength];
+        System.arraycopy(header, 0, legacy, 0, header.length);
+        System.arraycopy(rest, 0, legacy, header.length, rest.length);
+        if (readFully(peek, legacy, 9) < legacy.length) {
+            throw new IOException("Compressed payload truncated");
+        }
+        byte[] decoded;
+        try {
+            decoded = decodeImagePayload(legacy);
+        } catch (RuntimeException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        sink.write(decoded);
+        return new Streamed(decoded.length, null);
+    }
+
+    /** Copies exactly {@code length} bytes in {@link #STREAM_CHUNK_BYTES} chunks. */
+    static void copy(InputStream in, OutputStream sink, long length) throws IOException {
+        byte[] chunk = new byte[(int) Math.min(STREAM_CHUNK_BYTES, Math.max(1, length))];
+        long remaining = length;
+        while (remaining > 0) {
+            int n = in.read(chunk, 0, (int) Math.min(chunk.length, remaining));
+            if (n < 0) {
+                throw new IOException("Payload truncated before " + length + " bytes");
+            }
+            sink.write(chunk, 0, n);
+            remaining -= n;
+        }
+    }
+
+    /** Lets a decompressor read the container body without running into whatever follows it. */
+    private static final class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // The underlying stream belongs to the caller.
+        }
+    }
+
+    private OutputStream openCompressor(OutputStream out, Choice choice) {
+        switch (choice.codec) {
+            case LZ4_FAST:
+                return new LZ4BlockOutputStream(out, LZ4_BLOCK_SIZE, lz4Factory.fastCompressor());
+            case LZ4_HC:
+                return new LZ4BlockOutputStream(out, LZ4_BLOCK_SIZE, lz4Factory.highCompressor(choice.level));
+            case DEFLATE:
+                Deflater deflater = new Deflater(choice.level);
+                return new DeflaterOutputStream(out, deflater, 64 * 1024) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            deflater.end();
+                        }
+                    }
+                };
+            default:
+                return out;
+        }
+    }
+
+    InputStream openDecompressor(InputStream in, Codec codec) {
+        switch (codec) {
+            case LZ4_FAST:
+            case LZ4_HC:
+                return new LZ4BlockInputStream(in, lz4Factory.fastDecompressor());
+            case DEFLATE:
+                return new InflaterInputStream(in);
+            default:
+                return in;
+        }
+    }
+
+    private static int headerLength(String mimeType) {
+        return mimeType == null ? HEADER_SIZE : HEADER_SIZE + 1 + mimeType.length();
+    }
+
+    private static byte[] wrap(Choice choice, String mimeType, int originalLength, byte[] body, int bodyLength) {
+        if (mimeType != null && mimeType.length() > MAX_MIME_LENGTH) {
+            mimeType = MIME_OCTET_STREAM;
+        }
+        byte[] result = new byte[headerLength(mimeType) + bodyLength];
+        ByteBuffer header = ByteBuffer.wrap(result);
+        header.put((byte) MAGIC);
+        header.put((byte) (mimeType == null ? VERSION : VERSION_WITH_MIME));
+        header.put((byte) choice.codec.id);
+        header.put((byte) choice.level);
+        header.putInt(originalLength);
+        header.putInt(bodyLength);
+        if (mimeType != null) {
+            header.put((byte) mimeType.length());
+            header.put(mimeType.getBytes(StandardCharsets.US_ASCII));
+        }
+        System.arraycopy(body, 0, result, header.position(), bodyLength);
+        return result;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        return readFully(in, buffer, 0);
+    }
+
+    /** Fills {@code buffer} from {@code offset}; returns the filled length, short only at end of stream. */
+    static int readFully(InputStream in, byte[] buffer, int offset) throws IOException {
+        int read = offset;
+        while (read < buffer.length) {
+            int n = in.read(buffer, read, buffer.length - read);
+            if (n < 0) {
+                break;
+            }
+            read += n;
+        }
+        return read;
+    }
+
+    static double sampleEntropy(byte[] data) {
+        return sampleEntropy(data, data.length);
+    }
+
+    static double sampleEntropy(byte[] data, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        int[] histogram = new int[256];
+        int sampled = 0;
+        int chunk = Math.min(ENTROPY_SAMPLE_STRIDE, length);
+        int chunks = Math.max(1, Math.min(ENTROPY_SAMPLE_BYTES / chunk, length / chunk));
+        long step = chunks > 1 ? (long) (length - chunk) / (chunks - 1) : 0;
+        for (int c = 0; c < chunks; c++) {
+            int start = (int) (c * step);
+            for (int i = start; i < start + chunk; i++) {
+                histogram[data[i] & 0xFF]++;
+            }
+            sampled += chunk;
+        }
+        double entropy = 0;
+        for (int count : histogram) {
+            if (count > 0) {
+                double p = (double) count / sampled;
+                entropy -= p * (Math.log(p) / Math.log(2));
+            }
+        }
+        return entropy;
+    }
+}
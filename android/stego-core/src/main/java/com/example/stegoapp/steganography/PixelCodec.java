@@ -0,0 +1,289 @@
+package com.example.stegoapp.steganography;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Word-packed LSB codec for ARGB_8888 pixel buffers.
+ *
+ * Bit k of the payload goes to pixel {@code startPixel + k / 3}, channel
+ * {@code k % 3}, where channel 0/1/2 are the bytes at offsets 2/1/0 of the
+ * pixel. This is the layout of {@link PixelEmbedder#embedDataParallel},
+ * so every group of 8 pixels carries exactly 24 bits (3 payload bytes) and
+ * can be written from a single int without per-bit branching.
+ *
+ * Codecs for other {@link LsbLayout}s put pixel bit {@code j} into channel
+ * {@code j % channels} at bit {@code j / channels}, alpha being channel 3,
+ * so the default layout is the special case of depth 1 without alpha. Their
+ * groups are {@link #pixelsPerGroup()} pixels long instead of 8.
+ */
+public final class PixelCodec {
+    public static final int PIXELS_PER_GROUP = 8;
+    public static final int BYTES_PER_GROUP = 3;
+
+    private static final PixelCodec LITTLE_ENDIAN = new PixelCodec(16, 8, 0, 24, LsbLayout.DEFAULT);
+    private static final PixelCodec BIG_ENDIAN = new PixelCodec(8, 16, 24, 0, LsbLayout.DEFAULT);
+    private static final PixelCodec ARGB = new PixelCodec(0, 8, 16, 24, LsbLayout.DEFAULT);
+
+    private final int shift0;
+    private final int shift1;
+    private final int shift2;
+    private final int alphaShift;
+    private final int clearMask;
+    private final LsbLayout layout;
+    // Bit position in the pixel of each of the layout's bits per pixel.
+    private final int[] bitShifts;
+
+    private PixelCodec(int shift0, int shift1, int shift2, int alphaShift, LsbLayout layout) {
+        this.shift0 = shift0;
+        this.shift1 = shift1;
+        this.shift2 = shift2;
+        this.alphaShift = alphaShift;
+        this.layout = layout;
+        this.bitShifts = new int[layout.bitsPerPixel];
+        int mask = 0;
+        for (int j = 0; j < bitShifts.length; j++) {
+            int channel = j % layout.channels;
+            bitShifts[j] = (channel == 3 ? alphaShift : channelShift(channel)) + j / layout.channels;
+            mask |= 1 << bitShifts[j];
+        }
+        this.clearMask = ~mask;
+    }
+
+    /** Codec matching the int view returned by {@link #pixels(ByteBuffer)}. */
+    public static PixelCodec forBuffer(ByteBuffer buffer) {
+        return buffer.order() == ByteOrder.LITTLE_ENDIAN ? LITTLE_ENDIAN : BIG_ENDIAN;
+    }
+
+    public static PixelCodec forBuffer(ByteBuffer buffer, LsbLayout layout) {
+        return forBuffer(buffer).withLayout(layout);
+    }
+
+    /** Codec for {@code 0xAARRGGBB} ints as read by {@code Bitmap.getPixels}. */
+    public static PixelCodec forArgbInts() {
+        return ARGB;
+    }
+
+    public static PixelCodec forArgbInts(LsbLayout layout) {
+        return ARGB.withLayout(layout);
+    }
+
+    /** This codec's byte order with a different payload layout. */
+    public PixelCodec withLayout(LsbLayout layout) {
+        if (layout.isDefault()) {
+            return shift0 == BIG_ENDIAN.shift0 ? BIG_ENDIAN : shift0 == ARGB.shift0 ? ARGB : LITTLE_ENDIAN;
+        }
+        return new PixelCodec(shift0, shift1, shift2, alphaShift, layout);
+    }
+
+    public LsbLayout layout() {
+        return layout;
+    }
+
+    public int pixelsPerGroup() {
+        return layout.pixelsPerGroup;
+    }
+
+    public int bytesPerGroup() {
+        return layout.bytesPerGroup;
+    }
+
+    /** Whole-buffer int view in the buffer's byte order, independent of its position. */
+    public static IntBuffer pixels(ByteBuffer buffer) {
+        ByteBuffer view = buffer.duplicate();
+        view.order(buffer.order());
+        view.clear();
+        return view.asIntBuffer();
+    }
+
+    /** Number of pixels needed to carry {@code byteCount} payload bytes. */
+    public static int pixelsFor(int byteCount) {
+        return (int) (((long) byteCount * 8 + 2) / 3);
+    }
+
+    public void writeHeader(IntBuffer pixels, int value, int headerBits) {
+        int mask = ~(1 << shift0);
+        for (int i = 0; i < headerBits; i++) {
+            int p = pixels.get(i);
+            pixels.put(i, (p & mask) | (((value >>> i) & 1) << shift0));
+        }
+    }
+
+    public int readHeader(IntBuffer pixels, int headerBits) {
+        int value = 0;
+        for (int i = 0; i < headerBits; i++) {
+            value |= ((pixels.get(i) >>> shift0) & 1) << i;
+        }
+        return value;
+    }
+
+    /** Number of pixels needed to carry {@code byteCount} payload bytes in this codec's layout. */
+    public int pixelsForBytes(int byteCount) {
+        return layout.pixelsFor(byteCount);
+    }
+
+    /**
+     * Embeds {@code data[fromByte, toByte)}. {@code fromByte} must be a
+     * multiple of {@link #bytesPerGroup()}; a trailing partial group is only
+     * allowed at the end of the range and touches exactly its own bits.
+     */
+    public void embed(IntBuffer pixels, int startPixel, byte[] data, int fromByte, int toByte) {
+        if (fromByte % layout.bytesPerGroup != 0) {
+            throw new IllegalArgumentException("Range must start on a group boundary: " + fromByte);
+        }
+        if (!layout.isDefault()) {
+            embedBits(pixels, startPixel + fromByte / layout.bytesPerGroup * layout.pixelsPerGroup,
+                    data, fromByte, toByte - fromByte);
+            return;
+        }
+        int b = fromByte;
+        int idx = startPixel + (fromByte / BYTES_PER_GROUP) * PIXELS_PER_GROUP;
+        for (; b + BYTES_PER_GROUP <= toByte; b += BYTES_PER_GROUP, idx += PIXELS_PER_GROUP) {
+            int word = (data[b] & 0xFF) | (data[b + 1] & 0xFF) << 8 | (data[b + 2] & 0xFF) << 16;
+            for (int j = 0; j < PIXELS_PER_GROUP; j++) {
+                int p = pixels.get(idx + j);
+                p = (p & clearMask)
+                        | ((word & 1) << shift0)
+                        | (((word >>> 1) & 1) << shift1)
+                        | (((word >>> 2) & 1) << shift2);
+                pixels.put(idx + j, p);
+                word >>>= 3;
+            }
+        }
+        if (b < toByte) {
+            embedTail(pixels, idx, data, b, toByte - b);
+        }
+    }
+
+    /** Extracts into {@code output[fromByte, toByte)} with the same range rules as {@link #embed}. */
+    public void extract(IntBuffer pixels, int startPixel, byte[] output, int fromByte, int toByte) {
+        if (fromByte % layout.bytesPerGroup != 0) {
+            throw new IllegalArgumentException("Range must start on a group boundary: " + fromByte);
+        }
+        if (!layout.isDefault()) {
+            extractBits(pixels, startPixel + fromByte / layout.bytesPerGroup * layout.pixelsPerGroup,
+                    output, fromByte, toByte - fromByte);
+            return;
+        }
+        int b = fromByte;
+        int idx = startPixel + (fromByte / BYTES_PER_GROUP) * PIXELS_PER_GROUP;
+        for (; b + BYTES_PER_GROUP <= toByte; b += BYTES_PER_GROUP, idx += PIXELS_PER_GROUP) {
+            int word = extractGroup(pixels, startPixel, b / BYTES_PER_GROUP);
+            output[b] = (byte) word;
+            output[b + 1] = (byte) (word >>> 8);
+            output[b + 2] = (byte) (word >>> 16);
+        }
+        if (b < toByte) {
+            extractTail(pixels, idx, output, b, toByte - b);
+        }
+    }
+
+    /** Reads the {@link #bytesPerGroup()} payload bytes of one full group into {@code dst[0, bytesPerGroup)}. */
+    public void extractGroup(IntBuffer pixels, int startPixel, int group, byte[] dst) {
+        if (!layout.isDefault()) {
+            extractBits(pixels, startPixel + group * layout.pixelsPerGroup, dst, 0, layout.bytesPerGroup);
+            return;
+        }
+        int word = extractGroup(pixels, startPixel, group);
+        dst[0] = (byte) word;
+        dst[1] = (byte) (word >>> 8);
+        dst[2] = (byte) (word >>> 16);
+    }
+
+    /** Reads the 24-bit word carried by one full 8-pixel group of the default layout. */
+    public int extractGroup(IntBuffer pixels, int startPixel, int group) {
+        int idx = startPixel + group * PIXELS_PER_GROUP;
+        int word = 0;
+        for (int j = 0; j < PIXELS_PER_GROUP; j++) {
+            int p = pixels.get(idx + j);
+            word |= (((p >>> shift0) & 1)
+                    | (((p >>> shift1) & 1) << 1)
+                    | (((p >>> shift2) & 1) << 2)) << (3 * j);
+        }
+        return word;
+    }
+
+    private void embedTail(IntBuffer pixels, int idx, byte[] data, int from, int count) {
+        int word = 0;
+        for (int i = 0; i < count; i++) {
+            word |= (data[from + i] & 0xFF) << (8 * i);
+        }
+        int bits = count * 8;
+        for (int k = 0; k < bits; k++) {
+            int pos = idx + k / 3;
+            int shift = channelShift(k % 3);
+            int p = pixels.get(pos);
+            pixels.put(pos, (p & ~(1 << shift)) | (((word >>> k) & 1) << shift));
+        }
+    }
+
+    private void extractTail(IntBuffer pixels, int idx, byte[] output, int from, int count) {
+        int word = 0;
+        int bits = count * 8;
+        for (int k = 0; k < bits; k++) {
+            word |= ((pixels.get(idx + k / 3) >>> channelShift(k % 3)) & 1) << k;
+        }
+        for (int i = 0; i < count; i++) {
+            output[from + i] = (byte) (word >>> (8 * i));
+        }
+    }
+
+    /**
+     * Layout-general embed of {@code count} bytes from pixel {@code idx} on,
+     * streaming bits through an accumulator a pixel at a time. A final
+     * partial pixel keeps its bits beyond the payload.
+     */
+    private void embedBits(IntBuffer pixels, int idx, byte[] data, int from, int count) {
+        int bitsPerPixel = layout.bitsPerPixel;
+        long acc = 0;
+        int accBits = 0;
+        int b = from;
+        int end = from + count;
+        while (b < end || accBits > 0) {
+            while (accBits < bitsPerPixel && b < end) {
+                acc |= (long) (data[b++] & 0xFF) << accBits;
+                accBits += 8;
+            }
+            int n = Math.min(bitsPerPixel, accBits);
+            int p = pixels.get(idx);
+            if (n == bitsPerPixel) {
+                p &= clearMask;
+                for (int j = 0; j < n; j++) {
+                    p |= (int) ((acc >>> j) & 1) << bitShifts[j];
+                }
+            } else {
+                for (int j = 0; j < n; j++) {
+                    p = (p & ~(1 << bitShifts[j])) | (int) ((acc >>> j) & 1) << bitShifts[j];
+                }
+            }
+            pixels.put(idx++, p);
+            acc >>>= n;
+            accBits -= n;
+        }
+    }
+
+    private void extractBits(IntBuffer pixels, int idx, byte[] output, int from, int count) {
+        int bitsPerPixel = layout.bitsPerPixel;
+        long acc = 0;
+        int accBits = 0;
+        int b = from;
+        int end = from + count;
+        while (b < end) {
+            int p = pixels.get(idx++);
+            for (int j = 0; j < bitsPerPixel; j++) {
+                acc |= (long) ((p >>> bitShifts[j]) & 1) << (accBits + j);
+            }
+            accBits += bitsPerPixel;
+            while (accBits >= 8 && b < end) {
+                output[b++] = (byte) acc;
+                acc >>>= 8;
+                accBits -= 8;
+            }
+        }
+    }
+
+    private int channelShift(int channel) {
+        return channel == 0 ? shift0 : channel == 1 ? shift1 : shift2;
+    }
+}
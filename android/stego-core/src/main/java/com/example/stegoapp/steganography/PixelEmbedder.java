@@ -0,0 +1,275 @@
+package com.example.stegoapp.steganography;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Bit packing of a payload into a whole-frame ARGB_8888 pixel buffer: a
+ * {@link #LENGTH_BITS}-bit length header in the first pixels, then the
+ * payload in {@link PixelCodec} layout. Large payloads are split over a
+ * {@link ForkJoinPool} as {@link TaskGranularity} decides. The header
+ * records the payload's {@link LsbLayout} next to its length.
+ */
+public class PixelEmbedder {
+    public static final int LENGTH_BITS = 32;
+
+    private final ForkJoinPool executor;
+    private final TaskGranularity granularity;
+
+    public PixelEmbedder(ForkJoinPool executor, TaskGranularity granularity) {
+        this.executor = executor;
+        this.granularity = granularity;
+    }
+
+    /** Largest payload (after compression) a carrier of this size can hold. */
+    public static long capacity(int width, int height) {
+        return capacity(width, height, LsbLayout.DEFAULT);
+    }
+
+    public static long capacity(int width, int height, LsbLayout layout) {
+        return layout.capacity((long) width * height, LENGTH_BITS);
+    }
+
+    public void embedPayload(ByteBuffer pixelBuffer, byte[] data) {
+        embedPayload(pixelBuffer, data, LsbLayout.DEFAULT);
+    }
+
+    /**
+     * Writes the header and embeds {@code data} after it, fanning the work
+     * out over the executor in whole groups.
+     */
+    public void embedPayload(ByteBuffer pixelBuffer, byte[] data, LsbLayout layout) {
+        IntBuffer pixels = PixelCodec.pixels(pixelBuffer);
+        PixelCodec codec = PixelCodec.forBuffer(pixelBuffer, layout);
+        codec.writeHeader(pixels, layout.headerValue(data.length), LENGTH_BITS);
+        runGroups(codec, data.length, (fromByte, toByte) ->
+                codec.embed(pixels, LENGTH_BITS, data, fromByte, toByte));
+    }
+
+    /** The raw header word; split it with {@link LsbLayout#fromHeader} and {@link LsbLayout#lengthFromHeader}. */
+    public int readHeader(ByteBuffer pixelBuffer) {
+        return PixelCodec.forBuffer(pixelBuffer).readHeader(PixelCodec.pixels(pixelBuffer), LENGTH_BITS);
+    }
+
+    /** Fills {@code output} from the pixels following the header. */
+    public void extractPayload(ByteBuffer pixelBuffer, byte[] output, LsbLayout layout) {
+        extractPayload(pixelBuffer, output, LENGTH_BITS, layout);
+    }
+
+    /** Fills {@code output} from a pixel band whose first payload pixel is {@code startPixel}. */
+    public void extractPayload(ByteBuffer pixelBuffer, byte[] output, int startPixel, LsbLayout layout) {
+        IntBuffer pixels = PixelCodec.pixels(pixelBuffer);
+        PixelCodec codec = PixelCodec.forBuffer(pixelBuffer, layout);
+        runGroups(codec, output.length, (fromByte, toByte) ->
+                codec.extract(pixels, startPixel, output, fromByte, toByte));
+    }
+
+    /**
+     * The {@code length} payload bytes after the header as a stream,
+     * extracted a chunk at a time on the reading thread, so a consumer can
+     * start on the first bytes without the payload ever being held whole.
+     */
+    public InputStream openPayloadStream(ByteBuffer pixelBuffer, int length, LsbLayout layout) {
+        return new PayloadStream(PixelCodec.pixels(pixelBuffer), PixelCodec.forBuffer(pixelBuffer, layout), length);
+    }
+
+    private static final class PayloadStream extends InputStream {
+        private final IntBuffer pixels;
+        private final PixelCodec codec;
+        private final int length;
+        private final byte[] chunk;
+        private int extracted;
+        private int position;
+        private int limit;
+
+        PayloadStream(IntBuffer pixels, PixelCodec codec, int length) {
+            this.pixels = pixels;
+            this.codec = codec;
+            this.length = length;
+            int groupBytes = codec.bytesPerGroup();
+            this.chunk = new byte[Math.min(length, PayloadCodec.STREAM_CHUNK_BYTES / groupBytes * groupBytes)];
+        }
+
+        private boolean fill() {
+            if (position < limit) {
+                return true;
+            }
+            if (extracted >= length) {
+                return false;
+            }
+            int count = Math.min(chunk.length, length - extracted);
+            int startPixel = LENGTH_BITS + extracted / codec.bytesPerGroup() * codec.pixelsPerGroup();
+            codec.extract(pixels, startPixel, chunk, 0, count);
+            extracted += count;
+            position = 0;
+            limit = count;
+            return true;
+        }
+
+        @Override
+        public int read() {
+            return fill() ? chunk[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(chunk, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+
+    private interface ByteRangeTask {
+        void run(int fromByte, int toByte);
+    }
+
+    /**
+     * Splits a payload byte range on group boundaries so every leaf
+     * owns whole output bytes and needs no locking; idle workers steal the
+     * halves that are still queued.
+     */
+    private static final class GroupRangeAction extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ByteRangeTask task;
+        private final int fromGroup;
+        private final int toGroup;
+        private final int byteCount;
+        private final int bytesPerGroup;
+        private final int leafGroups;
+
+        GroupRangeAction(ByteRangeTask task, int fromGroup, int toGroup, int byteCount, int bytesPerGroup,
+                         int leafGroups) {
+            this.task = task;
+            this.fromGroup = fromGroup;
+            this.toGroup = toGroup;
+            this.byteCount = byteCount;
+            this.bytesPerGroup = bytesPerGroup;
+            this.leafGroups = leafGroups;
+        }
+
+        @Override
+        protected void compute() {
+            if (toGroup - fromGroup <= leafGroups) {
+                task.run(fromGroup * bytesPerGroup, Math.min(toGroup * bytesPerGroup, byteCount));
+                return;
+            }
+            int mid = (fromGroup + toGroup) >>> 1;
+            invokeAll(new GroupRangeAction(task, fromGroup, mid, byteCount, bytesPerGroup, leafGroups),
+                    new GroupRangeAction(task, mid, toGroup, byteCount, bytesPerGroup, leafGroups));
+        }
+    }
+
+    private void runGroups(PixelCodec codec, int byteCount, ByteRangeTask task) {
+        if (byteCount == 0) {
+            return;
+        }
+        if (granularity.runInline(byteCount)) {
+            granularity.recordInline();
+            task.run(0, byteCount);
+            return;
+        }
+        int bytesPerGroup = codec.bytesPerGroup();
+        int groups = (byteCount + bytesPerGroup - 1) / bytesPerGroup;
+        int leafGroups = granularity.chunkGroups(bytesPerGroup);
+        granularity.recordParallel((groups + leafGroups - 1) / leafGroups);
+        executor.invoke(new GroupRangeAction(task, 0, groups, byteCount, bytesPerGroup, leafGroups));
+    }
+
+    /**
+     * Bit-at-a-time embed of payload bits {@code [startBit, endBit)} into a
+     * little-endian ARGB_8888 buffer. This is the original layout that
+     * {@link PixelCodec} reproduces a group at a time; it is kept as the
+     * reference implementation and benchmark baseline.
+     */
+    public static void embedDataParallel(ByteBuffer buffer, byte[] data, int startPixelIdx, int startBit, int endBit) {
+        for (int bitIdx = startBit; bitIdx < endBit; bitIdx++) {
+            int bytePos = bitIdx / 8;
+            if (bytePos >= data.length) break;
+
+            int bitInByte = bitIdx % 8;
+            int bitValue = (data[bytePos] >> bitInByte) & 1;
+
+            int pixelOffset = startPixelIdx + (bitIdx / 3);
+            int channel = bitIdx % 3;
+            int bufferPos = pixelOffset * 4;
+
+            switch (channel) {
+                case 0:
+                    byte r = buffer.get(bufferPos + 2);
+                    r = (byte)((r & 0xFE) | bitValue);
+                    buffer.put(bufferPos + 2, r);
+                    break;
+                case 1:
+                    byte g = buffer.get(bufferPos + 1);
+                    g = (byte)((g & 0xFE) | bitValue);
+                    buffer.put(bufferPos + 1, g);
+                    break;
+                case 2:
+                    byte b = buffer.get(bufferPos);
+                    b = (byte)((b & 0xFE) | bitValue);
+                    buffer.put(bufferPos, b);
+                    break;
+            }
+        }
+    }
+
+    /** Counterpart of {@link #embedDataParallel}; callers may split the bit range across threads. */
+    public static void extractDataParallel(ByteBuffer buffer, byte[] output, int startPixelIdx, int startBit, int endBit) {
+        int current = 0;
+        int currentMask = 0;
+        for (int bitIdx = startBit; bitIdx < endBit; bitIdx++) {
+            int outputBytePos = bitIdx / 8;
+            if (outputBytePos >= output.length) break;
+
+            int bitInByte = bitIdx % 8;
+
+            int pixelOffset = startPixelIdx + (bitIdx / 3);
+            int channel = bitIdx % 3;
+            int bufferPos = pixelOffset * 4;
+
+            int bitValue = 0;
+            switch (channel) {
+                case 0:
+                    bitValue = buffer.get(bufferPos + 2) & 1;
+                    break;
+                case 1:
+                    bitValue = buffer.get(bufferPos + 1) & 1;
+                    break;
+                case 2:
+                    bitValue = buffer.get(bufferPos) & 1;
+                    break;
+            }
+
+            current |= bitValue << bitInByte;
+            currentMask |= 1 << bitInByte;
+            if (bitInByte == 7 || bitIdx == endBit - 1) {
+                storeExtractedByte(output, outputBytePos, current, currentMask);
+                current = 0;
+                currentMask = 0;
+            }
+        }
+    }
+
+    // Bytes fully inside [startBit, endBit) belong to this caller alone; only
+    // the partial bytes at unaligned range edges can be shared with a neighbour.
+    private static void storeExtractedByte(byte[] output, int pos, int bits, int mask) {
+        if (mask == 0xFF) {
+            output[pos] = (byte) bits;
+            return;
+        }
+        synchronized (output) {
+            output[pos] = (byte) ((output[pos] & ~mask) | bits);
+        }
+    }
+}
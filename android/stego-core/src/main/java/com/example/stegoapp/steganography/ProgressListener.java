@@ -0,0 +1,36 @@
+package com.example.stegoapp.steganography;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Receives progress from a running steganography operation and lets the
+ * caller cancel it. Implementations must be thread-safe: worker threads of
+ * the parallel embed/extract paths report progress concurrently.
+ */
+public interface ProgressListener {
+    ProgressListener NONE = new ProgressListener() {
+        @Override
+        public void onProgress(String stage, long current, long total) {
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    };
+
+    void onProgress(String stage, long current, long total);
+
+    boolean isCancelled();
+
+    /** Result of one item of a batch operation, delivered as soon as that item finishes. */
+    default void onItem(int index, Map<String, Object> result) {
+    }
+
+    default void throwIfCancelled() {
+        if (isCancelled()) {
+            throw new CancellationException("Job cancelled");
+        }
+    }
+}
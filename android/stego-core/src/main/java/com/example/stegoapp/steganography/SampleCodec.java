@@ -0,0 +1,49 @@
+package com.example.stegoapp.steganography;
+
+import java.nio.ByteBuffer;
+
+/**
+ * LSB codec for the raw bytes of a media sample: one payload bit in each
+ * sample byte, least significant bit first, so a payload byte spans 8
+ * consecutive sample bytes.
+ */
+public final class SampleCodec {
+    private SampleCodec() {
+    }
+
+    /**
+     * Writes {@code data[from, from + count)} into the LSBs of the sample in
+     * place, one payload byte per 8 sample bytes starting at {@code offset}.
+     */
+    public static void embedBytes(ByteBuffer carrier, int offset, byte[] data, int from, int count) {
+        int end = offset + count * 8;
+        if (end > carrier.limit()) {
+            throw new ArrayIndexOutOfBoundsException("Data won't fit in carrier: required " + end + ", available " + carrier.limit());
+        }
+        for (int i = 0; i < count; i++) {
+            int b = data[from + i];
+            int base = offset + i * 8;
+            for (int bit = 0; bit < 8; bit++) {
+                int pos = base + bit;
+                carrier.put(pos, (byte) ((carrier.get(pos) & 0xFE) | ((b >> bit) & 1)));
+            }
+        }
+    }
+
+    /**
+     * Reads {@code count} payload bytes from the sample's LSBs into
+     * {@code output[from, from + count)}; bytes past the end of the sample
+     * are left untouched.
+     */
+    public static void extractBytes(ByteBuffer carrier, int offset, byte[] output, int from, int count) {
+        int available = Math.min(count, (carrier.limit() - offset) / 8);
+        for (int i = 0; i < available; i++) {
+            int base = offset + i * 8;
+            int b = 0;
+            for (int bit = 0; bit < 8; bit++) {
+                b |= (carrier.get(base + bit) & 1) << bit;
+            }
+            output[from + i] = (byte) b;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.stegoapp.steganography;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides how the pixel codec work for one payload is split. Small payloads
+ * run inline on the calling thread, where fork/join scheduling would cost
+ * more than the work; large ones are cut into chunks whose pixels fit in a
+ * typical L2 cache.
+ */
+public class TaskGranularity {
+    public static final int DEFAULT_INLINE_MAX_BYTES = 16 * 1024;
+    // 8192 groups = 65536 pixels = 256 KB of ARGB_8888 pixel data.
+    public static final int DEFAULT_CHUNK_BYTES = 24 * 1024;
+
+    private volatile int inlineMaxBytes = DEFAULT_INLINE_MAX_BYTES;
+    private volatile int chunkBytes = DEFAULT_CHUNK_BYTES;
+
+    private final LongAdder inlineRuns = new LongAdder();
+    private final LongAdder parallelRuns = new LongAdder();
+    private final LongAdder parallelChunks = new LongAdder();
+
+    /**
+     * Sets the split thresholds. {@code chunkBytes} is a target, not an exact
+     * size: each layout rounds it down to whole groups of its own width.
+     */
+    public void configure(int inlineMaxBytes, int chunkBytes) {
+        if (inlineMaxBytes < 0) {
+            throw new IllegalArgumentException("inlineMaxBytes must be >= 0: " + inlineMaxBytes);
+        }
+        if (chunkBytes < 1) {
+            throw new IllegalArgumentException("chunkBytes must be >= 1: " + chunkBytes);
+        }
+        this.inlineMaxBytes = inlineMaxBytes;
+        this.chunkBytes = chunkBytes;
+    }
+
+    public boolean runInline(int byteCount) {
+        return byteCount <= inlineMaxBytes;
+    }
+
+    /** Groups per chunk for a layout whose groups carry {@code bytesPerGroup} bytes. */
+    public int chunkGroups(int bytesPerGroup) {
+        return Math.max(1, chunkBytes / bytesPerGroup);
+    }
+
+    public int getInlineMaxBytes() {
+        return inlineMaxBytes;
+    }
+
+    public int getChunkBytes() {
+        return chunkBytes;
+    }
+
+    public void recordInline() {
+        inlineRuns.increment();
+    }
+
+    public void recordParallel(int chunks) {
+        parallelRuns.increment();
+        parallelChunks.add(chunks);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("inlineMaxBytes", inlineMaxBytes);
+        stats.put("chunkBytes", chunkBytes);
+        stats.put("inlineRuns", inlineRuns.sum());
+        stats.put("parallelRuns", parallelRuns.sum());
+        stats.put("parallelChunks", parallelChunks.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.stegoapp.steganography;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.IntBuffer;
+
+/**
+ * Embeds into and extracts from a carrier in full-width tiles decoded with
+ * an {@link ArgbRowReader}, so memory is bounded by the tile size rather
+ * than the image size. Bits land exactly where the whole-frame path puts
+ * them: pixel {@code i} in row-major order, {@link PixelCodec} layout.
+ *
+ * Each tile is decoded with {@link #padRows} extra rows on either side, so
+ * a pixel group (at most 8 pixels in any {@link LsbLayout}) or the header that straddles a tile boundary is
+ * always whole in the tile array and can be written or read in one go.
+ */
+public class TiledCarrier {
+    /** Carriers with at least this many pixels (a 96 MB ARGB frame) are hidden tile by tile. */
+    public static final long MIN_TILED_PIXELS = 24L * 1024 * 1024;
+    static final int TILE_PIXELS = 4 * 1024 * 1024;
+
+    private static final int LENGTH_BITS = PixelEmbedder.LENGTH_BITS;
+
+    private final ArgbRowReader reader;
+    private final int width;
+    private final int height;
+    private final int tileRows;
+    private final int padRows;
+
+    public TiledCarrier(ArgbRowReader reader) {
+        this(reader, TILE_PIXELS);
+    }
+
+    TiledCarrier(ArgbRowReader reader, int tilePixels) {
+        this.reader = reader;
+        this.width = reader.getWidth();
+        this.height = reader.getHeight();
+        this.tileRows = Math.max(1, tilePixels / width);
+        int headerRows = (LENGTH_BITS + width - 1) / width;
+        int groupRows = (PixelCodec.PIXELS_PER_GROUP + width - 1) / width;
+        this.padRows = Math.max(headerRows, groupRows);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** The raw header word, as {@link PixelEmbedder#readHeader} returns it. */
+    public int readHeader() throws IOException {
+        int rows = Math.min(height, (LENGTH_BITS + width - 1) / width);
+        int[] header = new int[rows * width];
+        reader.decodeArgbRows(0, rows, header, 0);
+        return PixelCodec.forArgbInts().readHeader(IntBuffer.wrap(header), LENGTH_BITS);
+    }
+
+    /** Reads {@code dataLength} payload bytes, decoding only the rows that carry them. */
+    public byte[] extract(int dataLength, LsbLayout layout, ProgressListener listener) throws IOException {
+        PayloadStream in = openPayloadStream(dataLength, layout, listener);
+        byte[] output = new byte[dataLength];
+        int read = 0;
+        while (read < dataLength) {
+            int n = in.read(output, read, dataLength - read);
+            if (n < 0) {
+                throw new IOException("Carrier ended after " + read + " of " + dataLength + " payload bytes");
+            }
+            read += n;
+        }
+        return output;
+    }
+
+    /**
+     * The payload as a stream that decodes and extracts one tile per refill,
+     * so memory stays at one tile and its bytes whatever the payload size.
+     */
+    public PayloadStream openPayloadStream(int dataLength, LsbLayout layout, ProgressListener listener) {
+        return new PayloadStream(dataLength, PixelCodec.forArgbInts(layout), listener);
+    }
+
+    public final class PayloadStream extends InputStream {
+        private final int dataLength;
+        private final PixelCodec codec;
+        private final ProgressListener listener;
+        private final int groups;
+        private final int endRow;
+        private int top = LENGTH_BITS / width;
+        private int[] tile;
+        private byte[] chunk = new byte[0];
+        private int position;
+        private int limit;
+
+        PayloadStream(int dataLength, PixelCodec codec, ProgressListener listener) {
+            this.dataLength = dataLength;
+            this.codec = codec;
+            this.listener = listener;
+            this.groups = groupCount(codec, dataLength);
+            this.endRow = (LENGTH_BITS + codec.pixelsForBytes(dataLength) + width - 1) / width;
+        }
+
+        private boolean fill() throws IOException {
+            while (position >= limit) {
+                if (top >= endRow) {
+                    return false;
+                }
+                listener.throwIfCancelled();
+                int bottom = Math.min(endRow, top + tileRows);
+                // Each group is read from the tile holding its first pixel.
+                int fromGroup = firstGroupAtOrAfter(codec, top * width);
+                int toGroup = Math.min(groups, firstGroupAtOrAfter(codec, bottom * width));
+                int paddedTop = Math.max(0, top - padRows);
+                top = bottom;
+                if (fromGroup >= toGroup) {
+                    continue;
+                }
+                tile = decode(paddedTop, Math.min(height, bottom + padRows), tile);
+                int fromByte = fromGroup * codec.bytesPerGroup();
+                int toByte = Math.min(dataLength, toGroup * codec.bytesPerGroup());
+                if (chunk.length < toByte - fromByte) {
+                    chunk = new byte[toByte - fromByte];
+                }
+                codec.extract(IntBuffer.wrap(tile), LENGTH_BITS - paddedTop * width + fromGroup * codec.pixelsPerGroup(),
+                        chunk, 0, toByte - fromByte);
+                position = 0;
+                limit = toByte - fromByte;
+                listener.onProgress("extract", toByte, dataLength);
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? chunk[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, limit - position);
+            System.arraycopy(chunk, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+
+    /**
+     * The carrier with {@code data} embedded in {@code layout}, as rows for
+     * the PNG encoder. The two most recently used tiles are kept decoded,
+     * which covers the encoder's in-flight bands as it walks down the image.
+     */
+    public EmbedSource embed(byte[] data, LsbLayout layout) {
+        return new EmbedSource(data, layout);
+    }
+
+    public final class EmbedSource implements ParallelPngEncoder.RowSource {
+        private final byte[] data;
+        private final PixelCodec codec;
+        private final int header;
+        private final int[] slotTile = {-1, -1};
+        private final int[][] slotPixels = new int[2][];
+        private int lastUsed;
+
+        EmbedSource(byte[] data, LsbLayout layout) {
+            this.data = data;
+            this.codec = PixelCodec.forArgbInts(layout);
+            this.header = layout.headerValue(data.length);
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public void readRows(int y, int rows, byte[] dst) throws IOException {
+            int[] argb = new int[rows * width];
+            readArgbRows(y, rows, argb);
+            ParallelPngEncoder.argbToRgba(argb, argb.length, dst);
+        }
+
+        /** Copies embedded rows {@code [y, y + rows)} into {@code dst} as ARGB ints. */
+        public synchronized void readArgbRows(int y, int rows, int[] dst) throws IOException {
+            int row = y;
+            int end = y + rows;
+            while (row < end) {
+                int index = row / tileRows;
+                int[] pixels = tile(index);
+                int paddedTop = Math.max(0, index * tileRows - padRows);
+                int chunk = Math.min(end, (index + 1) * tileRows) - row;
+                System.arraycopy(pixels, (row - paddedTop) * width, dst, (row - y) * width, chunk * width);
+                row += chunk;
+            }
+        }
+
+        private int[] tile(int index) throws IOException {
+            for (int s = 0; s < 2; s++) {
+                if (slotTile[s] == index) {
+                    lastUsed = s;
+                    return slotPixels[s];
+                }
+            }
+            int s = 1 - lastUsed;
+            slotTile[s] = -1;
+            int top = index * tileRows;
+            int bottom = Math.min(height, top + tileRows);
+            int paddedTop = Math.max(0, top - padRows);
+            int[] pixels = decode(paddedTop, Math.min(height, bottom + padRows), slotPixels[s]);
+            embedTile(pixels, paddedTop, top, bottom);
+            slotPixels[s] = pixels;
+            slotTile[s] = index;
+            lastUsed = s;
+            return pixels;
+        }
+
+        /** Applies every header bit and group that touches rows {@code [top, bottom)}. */
+        private void embedTile(int[] pixels, int paddedTop, int top, int bottom) {
+            IntBuffer view = IntBuffer.wrap(pixels);
+            if (top * width < LENGTH_BITS) {
+                codec.writeHeader(view, header, LENGTH_BITS);
+            }
+            int fromGroup = groupContaining(codec, top * width);
+            int toGroup = Math.min(groupCount(codec, data.length), firstGroupAtOrAfter(codec, bottom * width));
+            if (fromGroup < toGroup) {
+                codec.embed(view, LENGTH_BITS - paddedTop * width, data,
+                        fromGroup * codec.bytesPerGroup(),
+                        Math.min(data.length, toGroup * codec.bytesPerGroup()));
+            }
+        }
+    }
+
+    private int[] decode(int top, int bottom, int[] reuse) throws IOException {
+        int count = (bottom - top) * width;
+        int[] pixels = reuse != null && reuse.length >= count ? reuse : new int[count];
+        reader.decodeArgbRows(top, bottom, pixels, 0);
+        return pixels;
+    }
+
+    private static int groupCount(PixelCodec codec, int dataLength) {
+        return (dataLength + codec.bytesPerGroup() - 1) / codec.bytesPerGroup();
+    }
+
+    private static int groupContaining(PixelCodec codec, long pixel) {
+        return pixel <= LENGTH_BITS ? 0 : (int) ((pixel - LENGTH_BITS) / codec.pixelsPerGroup());
+    }
+
+    private static int firstGroupAtOrAfter(PixelCodec codec, long pixel) {
+        return pixel <= LENGTH_BITS ? 0
+                : (int) ((pixel - LENGTH_BITS + codec.pixelsPerGroup() - 1) / codec.pixelsPerGroup());
+    }
+}
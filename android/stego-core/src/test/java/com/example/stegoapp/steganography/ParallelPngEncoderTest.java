@@ -0,0 +1,197 @@
+package com.example.stegoapp.steganography;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelPngEncoderTest {
+    private static final ExecutorService POOL = Executors.newFixedThreadPool(4);
+
+    @AfterClass
+    public static void shutdownPool() {
+        POOL.shutdownNow();
+    }
+
+    /** Smooth gradients with noise, so every filter type gets picked somewhere. */
+    private static byte[] image(int width, int height, long seed) {
+        Random random = new Random(seed);
+        byte[] rgba = new byte[width * height * 4];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int o = (y * width + x) * 4;
+                rgba[o] = (byte) (x * 3 + random.nextInt(4));
+                rgba[o + 1] = (byte) (y * 5);
+                rgba[o + 2] = (byte) random.nextInt(256);
+                rgba[o + 3] = (byte) (random.nextInt(16) == 0 ? random.nextInt(256) : 255);
+            }
+        }
+        return rgba;
+    }
+
+    private static ParallelPngEncoder.RowSource rows(byte[] rgba, int width, int height) {
+        return ParallelPngEncoder.fromPixelBuffer(ByteBuffer.wrap(rgba), width, height, false);
+    }
+
+    /** The concatenated IDAT payload, after checking every chunk's CRC and the IHDR. */
+    private static byte[] idatStream(byte[] png, int width, int height) {
+        ByteBuffer in = ByteBuffer.wrap(png);
+        byte[] signature = new byte[8];
+        in.get(signature);
+        assertArrayEquals(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'}, signature);
+        ByteArrayOutputStream idat = new ByteArrayOutputStream();
+        String type = null;
+        while (in.hasRemaining()) {
+            int length = in.getInt();
+            byte[] typeAndData = new byte[4 + length];
+            in.get(typeAndData);
+            CRC32 crc = new CRC32();
+            crc.update(typeAndData);
+            assertEquals((int) crc.getValue(), in.getInt());
+            type = new String(typeAndData, 0, 4, StandardCharsets.US_ASCII);
+            if (type.equals("IHDR")) {
+                ByteBuffer ihdr = ByteBuffer.wrap(typeAndData, 4, length);
+                assertEquals(width, ihdr.getInt());
+                assertEquals(height, ihdr.getInt());
+            } else if (type.equals("IDAT")) {
+                idat.write(typeAndData, 4, length);
+            }
+        }
+        assertEquals("IEND", type);
+        return idat.toByteArray();
+    }
+
+    /** Reverses the per-row filters of inflated scanlines. */
+    private static byte[] unfilter(byte[] scanlines, int width, int height) {
+        int rowBytes = width * 4;
+        byte[] rgba = new byte[rowBytes * height];
+        for (int y = 0; y < height; y++) {
+            int filter = scanlines[y * (rowBytes + 1)];
+            int in = y * (rowBytes + 1) + 1;
+            int out = y * rowBytes;
+            for (int i = 0; i < rowBytes; i++) {
+                int left = i >= 4 ? rgba[out + i - 4] & 0xFF : 0;
+                int up = y > 0 ? rgba[out - rowBytes + i] & 0xFF : 0;
+                int upLeft = i >= 4 && y > 0 ? rgba[out - rowBytes + i - 4] & 0xFF : 0;
+                int predictor;
+                switch (filter) {
+                    case 0:
+                        predictor = 0;
+                        break;
+                    case 1:
+                        predictor = left;
+                        break;
+                    case 2:
+                        predictor = up;
+                        break;
+                    case 3:
+                        predictor = (left + up) >>> 1;
+                        break;
+                    case 4:
+                        int p = left + up - upLeft;
+                        int pa = Math.abs(p - left);
+                        int pb = Math.abs(p - up);
+                        int pc = Math.abs(p - upLeft);
+                        predictor = pa <= pb && pa <= pc ? left : pb <= pc ? up : upLeft;
+                        break;
+                    default:
+                        throw new AssertionError("Bad filter type " + filter + " in row " + y);
+                }
+                rgba[out + i] = (byte) (scanlines[in + i] + predictor);
+            }
+        }
+        return rgba;
+    }
+
+    @Test
+    public void bandedStreamInflatesToTheImage() throws IOException, DataFormatException {
+        int width = 53;
+        int height = 41;
+        int rowBytes = width * 4;
+        byte[] rgba = image(width, height, 41);
+        // One band, two uneven bands, several, and one row per band.
+        int[] bandRows = {height, 21, 6, 1};
+        for (int rowsPerBand : bandRows) {
+            for (int level = 0; level <= 9; level++) {
+                String label = rowsPerBand + " rows per band, level " + level;
+                ParallelPngEncoder encoder = new ParallelPngEncoder(POOL, 3, rowsPerBand * rowBytes, null);
+                ByteArrayOutputStream png = new ByteArrayOutputStream();
+                encoder.encode(rows(rgba, width, height), png, level);
+                byte[] zlib = idatStream(png.toByteArray(), width, height);
+
+                // The zlib wrapper makes Inflater verify the trailing Adler-32 itself.
+                Inflater inflater = new Inflater();
+                inflater.setInput(zlib);
+                byte[] scanlines = new byte[height * (rowBytes + 1)];
+                int n = 0;
+                while (!inflater.finished() && n < scanlines.length) {
+                    n += inflater.inflate(scanlines, n, scanlines.length - n);
+                }
+                assertTrue(label, inflater.finished());
+                assertEquals(label, scanlines.length, n);
+                assertEquals(label, 0, inflater.getRemaining());
+                inflater.end();
+
+                Adler32 adler = new Adler32();
+                adler.update(scanlines);
+                assertEquals(label, (int) adler.getValue(), ByteBuffer.wrap(zlib, zlib.length - 4, 4).getInt());
+                assertEquals(label, 0, ((zlib[0] & 0xFF) << 8 | (zlib[1] & 0xFF)) % 31);
+                assertArrayEquals(label, rgba, unfilter(scanlines, width, height));
+            }
+        }
+    }
+
+    @Test
+    public void bandListenerSeesEveryRawByte() throws IOException {
+        int width = 16;
+        int height = 30;
+        long[] raw = new long[1];
+        ParallelPngEncoder encoder = new ParallelPngEncoder(POOL, 2, 7 * width * 4, (start, end, rawBytes) -> {
+            synchronized (raw) {
+                raw[0] += rawBytes;
+            }
+        });
+        encoder.encode(rows(image(width, height, 7), width, height), new ByteArrayOutputStream(), 6);
+        assertEquals((long) height * (width * 4 + 1), raw[0]);
+    }
+
+    @Test
+    public void combinedAdler32MatchesWholeStream() {
+        Random random = new Random(51);
+        for (int trial = 0; trial < 50; trial++) {
+            byte[] data = new byte[random.nextInt(200_000)];
+            random.nextBytes(data);
+            int split = data.length == 0 ? 0 : random.nextInt(data.length);
+            Adler32 first = new Adler32();
+            first.update(data, 0, split);
+            Adler32 second = new Adler32();
+            second.update(data, split, data.length - split);
+            Adler32 whole = new Adler32();
+            whole.update(data);
+
+            assertEquals(whole.getValue(),
+                    ParallelPngEncoder.combineAdler32(first.getValue(), second.getValue(), data.length - split));
+        }
+    }
+
+    @Test
+    public void premultipliedRowsAreUnpremultiplied() {
+        byte[] rgba = {(byte) 128, 64, 0, (byte) 128, 10, 20, 30, 0, 1, 2, 3, (byte) 255};
+        ParallelPngEncoder.unpremultiply(rgba, rgba.length);
+        assertArrayEquals(new byte[]{(byte) 255, (byte) 128, 0, (byte) 128, 0, 0, 0, 0, 1, 2, 3, (byte) 255}, rgba);
+    }
+}
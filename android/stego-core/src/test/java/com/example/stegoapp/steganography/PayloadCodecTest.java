@@ -0,0 +1,218 @@
+package com.example.stegoapp.steganography;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class PayloadCodecTest {
+    private static final String[] CHOICES = {"stored", "lz4", "lz4hc", "deflate1", "deflate6", "deflate9"};
+
+    private final PayloadCodec codec = new PayloadCodec(LZ4Factory.fastestInstance());
+
+    /** Text-like bytes every codec shrinks, longer than one stream chunk. */
+    private static byte[] compressible(int length) {
+        byte[] words = "the quick brown fox jumps over the lazy dog 0123456789 ".getBytes(StandardCharsets.US_ASCII);
+        Random random = new Random(length);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = random.nextInt(8) == 0 ? (byte) random.nextInt(256) : words[i % words.length];
+        }
+        return data;
+    }
+
+    private PayloadCodec.Streamed decodeTo(byte[] container, ByteArrayOutputStream sink) throws IOException {
+        return codec.decodeTo(new ByteArrayInputStream(container), sink);
+    }
+
+    @Test
+    public void everyCodecRoundTripsWithAndWithoutMimeType() throws IOException {
+        byte[] data = compressible(PayloadCodec.STREAM_CHUNK_BYTES * 3 + 17);
+        for (String name : CHOICES) {
+            for (String mimeType : new String[]{null, "image/png"}) {
+                byte[] container = codec.encode(data, mimeType, PayloadCodec.Choice.parse(name));
+                assertEquals(name, mimeType == null ? PayloadCodec.VERSION : PayloadCodec.VERSION_WITH_MIME,
+                        container[1]);
+                if (!name.equals("stored")) {
+                    assertTrue(name + " should compress", container.length < data.length);
+                }
+
+                PayloadCodec.Decoded decoded = codec.decodePayload(container);
+                assertArrayEquals(name, data, decoded.data);
+                assertEquals(name, mimeType, decoded.mimeType);
+
+                ByteArrayOutputStream sink = new ByteArrayOutputStream();
+                PayloadCodec.Streamed streamed = decodeTo(container, sink);
+                assertArrayEquals(name, data, sink.toByteArray());
+                assertEquals(name, data.length, streamed.length);
+                assertEquals(name, mimeType, streamed.mimeType);
+            }
+        }
+    }
+
+    @Test
+    public void incompressibleDataIsStored() throws IOException {
+        byte[] data = new byte[4096];
+        new Random(31).nextBytes(data);
+        byte[] container = codec.encode(data, PayloadCodec.Choice.parse("deflate9"));
+        assertEquals(0, container[2]);
+        assertArrayEquals(data, codec.decode(container));
+    }
+
+    @Test
+    public void streamedEncodeMatchesInMemoryEncode() throws IOException {
+        byte[] data = compressible(200_000);
+        PayloadCodec.Source source = new PayloadCodec.Source() {
+            @Override
+            public InputStream openStream() {
+                return new ByteArrayInputStream(data);
+            }
+
+            @Override
+            public long getLength() {
+                return -1;
+            }
+
+            @Override
+            public String getMimeType() {
+                return "text/plain";
+            }
+        };
+        for (String name : CHOICES) {
+            PayloadCodec.Choice choice = PayloadCodec.Choice.parse(name);
+            assertArrayEquals(name, codec.encode(data, "text/plain", choice), codec.encode(source, choice, 0));
+        }
+    }
+
+    @Test
+    public void decodeToLeavesTrailingBytesUnread() throws IOException {
+        byte[] data = compressible(5000);
+        byte[] container = codec.encode(data, "text/plain", PayloadCodec.Choice.parse("deflate6"));
+        byte[] padded = Arrays.copyOf(container, container.length + 100);
+        Arrays.fill(padded, container.length, padded.length, (byte) 0x5A);
+        ByteArrayInputStream in = new ByteArrayInputStream(padded);
+
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        codec.decodeTo(in, sink);
+
+        assertArrayEquals(data, sink.toByteArray());
+        assertEquals(100, in.available());
+    }
+
+    @Test
+    public void legacyStoredFlagDecodes() throws IOException {
+        byte[] data = compressible(1234);
+        byte[] legacy = ByteBuffer.allocate(5 + data.length).put((byte) 0).putInt(data.length).put(data).array();
+
+        assertArrayEquals(data, codec.decodeImagePayload(legacy));
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        PayloadCodec.Streamed streamed = codec.decodeImagePayloadTo(new ByteArrayInputStream(legacy), sink);
+        assertArrayEquals(data, sink.toByteArray());
+        assertNull(streamed.mimeType);
+    }
+
+    @Test
+    public void legacyLz4FlagDecodes() throws IOException {
+        byte[] data = compressible(50_000);
+        LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+        byte[] block = compressor.compress(data);
+        byte[] legacy = ByteBuffer.allocate(9 + block.length)
+                .put((byte) 1).putInt(data.length).putInt(block.length).put(block).array();
+
+        assertArrayEquals(data, codec.decodeImagePayload(legacy));
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        PayloadCodec.Streamed streamed = codec.decodeImagePayloadTo(new ByteArrayInputStream(legacy), sink);
+        assertArrayEquals(data, sink.toByteArray());
+        assertEquals(data.length, streamed.length);
+    }
+
+    @Test
+    public void imagePayloadAcceptsContainers() throws IOException {
+        byte[] data = compressible(3000);
+        byte[] container = codec.encode(data, "image/jpeg", PayloadCodec.Choice.parse("lz4"));
+        assertArrayEquals(data, codec.decodeImagePayload(container));
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        PayloadCodec.Streamed streamed = codec.decodeImagePayloadTo(new ByteArrayInputStream(container), sink);
+        assertArrayEquals(data, sink.toByteArray());
+        assertEquals("image/jpeg", streamed.mimeType);
+    }
+
+    @Test
+    public void truncatedContainersFail() {
+        byte[] data = compressible(20_000);
+        for (String name : CHOICES) {
+            for (String mimeType : new String[]{null, "image/png"}) {
+                byte[] container = codec.encode(data, mimeType, PayloadCodec.Choice.parse(name));
+                byte[] truncated = Arrays.copyOf(container, container.length / 2);
+                assertThrows(name, IOException.class, () -> codec.decodePayload(truncated));
+                assertThrows(name, IOException.class, () -> decodeTo(truncated, new ByteArrayOutputStream()));
+                byte[] headerOnly = Arrays.copyOf(container, PayloadCodec.HEADER_SIZE - 1);
+                assertThrows(name, IOException.class, () -> codec.decodePayload(headerOnly));
+                assertThrows(name, IOException.class, () -> decodeTo(headerOnly, new ByteArrayOutputStream()));
+            }
+        }
+    }
+
+    @Test
+    public void corruptHeadersFail() {
+        byte[] container = codec.encode(compressible(2000), "text/plain", PayloadCodec.Choice.parse("deflate6"));
+
+        byte[] badVersion = container.clone();
+        badVersion[1] = 9;
+        byte[] badCodec = container.clone();
+        badCodec[2] = 42;
+        byte[] negativeLength = container.clone();
+        ByteBuffer.wrap(negativeLength).putInt(4, -1);
+        byte[] hugeLength = container.clone();
+        ByteBuffer.wrap(hugeLength).putInt(4, PayloadCodec.MAX_ORIGINAL_LENGTH + 1);
+        byte[] notContainer = container.clone();
+        notContainer[0] = 0x11;
+
+        for (byte[] corrupt : new byte[][]{badVersion, badCodec, negativeLength, hugeLength, notContainer}) {
+            assertThrows(IOException.class, () -> codec.decodePayload(corrupt));
+            assertThrows(IOException.class, () -> decodeTo(corrupt, new ByteArrayOutputStream()));
+        }
+    }
+
+    @Test
+    public void storedLengthMismatchFails() {
+        byte[] container = codec.encode(compressible(2000), PayloadCodec.Choice.STORED);
+        byte[] longer = container.clone();
+        ByteBuffer.wrap(longer).putInt(4, 1990);
+        byte[] shorter = container.clone();
+        ByteBuffer.wrap(shorter).putInt(4, 2010);
+
+        for (byte[] corrupt : new byte[][]{longer, shorter}) {
+            assertThrows(IOException.class, () -> codec.decodePayload(corrupt));
+            assertThrows(IOException.class, () -> decodeTo(corrupt, new ByteArrayOutputStream()));
+        }
+    }
+
+    @Test
+    public void corruptLegacyPayloadsFail() {
+        byte[] unknownFlag = {7, 0, 0, 0, 1, 0};
+        byte[] shortStored = ByteBuffer.allocate(20).put((byte) 0).putInt(100).array();
+        byte[] shortLz4 = ByteBuffer.allocate(12).put((byte) 1).putInt(100).putInt(50).array();
+
+        for (byte[] corrupt : new byte[][]{unknownFlag, shortStored, shortLz4}) {
+            assertThrows(IllegalArgumentException.class, () -> codec.decodeImagePayload(corrupt));
+            assertThrows(IOException.class,
+                    () -> codec.decodeImagePayloadTo(new ByteArrayInputStream(corrupt), new ByteArrayOutputStream()));
+        }
+    }
+}
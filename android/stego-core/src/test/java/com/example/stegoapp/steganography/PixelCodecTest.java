@@ -0,0 +1,130 @@
+package com.example.stegoapp.steganography;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class PixelCodecTest {
+
+    /**
+     * 0xAARRGGBB ints, as Bitmap.getPixels returns them, of an ARGB_8888
+     * buffer as Bitmap.copyPixelsToBuffer fills it: R, G, B, A in memory.
+     */
+    private static int[] argbInts(ByteBuffer buffer) {
+        int[] argb = new int[buffer.capacity() / 4];
+        for (int i = 0; i < argb.length; i++) {
+            int r = buffer.get(i * 4) & 0xFF;
+            int g = buffer.get(i * 4 + 1) & 0xFF;
+            int b = buffer.get(i * 4 + 2) & 0xFF;
+            int a = buffer.get(i * 4 + 3) & 0xFF;
+            argb[i] = a << 24 | r << 16 | g << 8 | b;
+        }
+        return argb;
+    }
+
+    @Test
+    public void argbIntsMatchLittleEndianBuffer() {
+        Random random = new Random(11);
+        for (LsbLayout layout : PixelEmbedderTest.allLayouts()) {
+            byte[] data = new byte[layout.bytesPerGroup * 9 + 2];
+            random.nextBytes(data);
+            ByteBuffer buffer = PixelEmbedderTest.randomPixels(random, layout.pixelsFor(data.length) + 8,
+                    ByteOrder.LITTLE_ENDIAN);
+            int[] argb = argbInts(buffer);
+
+            PixelCodec.forBuffer(buffer, layout).embed(PixelCodec.pixels(buffer), 0, data, 0, data.length);
+            IntBuffer ints = IntBuffer.wrap(argb);
+            PixelCodec.forArgbInts(layout).embed(ints, 0, data, 0, data.length);
+
+            assertArrayEquals(layout.toString(), argbInts(buffer), argb);
+            byte[] output = new byte[data.length];
+            PixelCodec.forArgbInts(layout).extract(ints, 0, output, 0, data.length);
+            assertArrayEquals(layout.toString(), data, output);
+        }
+    }
+
+    @Test
+    public void rangesEmbedIndependently() {
+        Random random = new Random(12);
+        for (LsbLayout layout : PixelEmbedderTest.allLayouts()) {
+            int groupBytes = layout.bytesPerGroup;
+            byte[] data = new byte[groupBytes * 10 + 1];
+            random.nextBytes(data);
+            ByteBuffer whole = PixelEmbedderTest.randomPixels(random, layout.pixelsFor(data.length) + 3,
+                    ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer split = PixelEmbedderTest.copyOf(whole);
+            PixelCodec codec = PixelCodec.forBuffer(whole, layout);
+
+            codec.embed(PixelCodec.pixels(whole), 3, data, 0, data.length);
+            IntBuffer pixels = PixelCodec.pixels(split);
+            codec.embed(pixels, 3, data, groupBytes * 4, data.length);
+            codec.embed(pixels, 3, data, 0, groupBytes * 4);
+
+            assertArrayEquals(layout.toString(), PixelEmbedderTest.bytesOf(whole), PixelEmbedderTest.bytesOf(split));
+            byte[] output = new byte[data.length];
+            codec.extract(pixels, 3, output, groupBytes * 7, data.length);
+            codec.extract(pixels, 3, output, 0, groupBytes * 7);
+            assertArrayEquals(layout.toString(), data, output);
+        }
+    }
+
+    @Test
+    public void extractGroupReadsOneGroup() {
+        Random random = new Random(13);
+        for (LsbLayout layout : PixelEmbedderTest.allLayouts()) {
+            byte[] data = new byte[layout.bytesPerGroup * 6];
+            random.nextBytes(data);
+            ByteBuffer buffer = PixelEmbedderTest.randomPixels(random, layout.pixelsFor(data.length) + 5,
+                    ByteOrder.BIG_ENDIAN);
+            PixelCodec codec = PixelCodec.forBuffer(buffer, layout);
+            IntBuffer pixels = PixelCodec.pixels(buffer);
+            codec.embed(pixels, 5, data, 0, data.length);
+
+            byte[] group = new byte[codec.bytesPerGroup()];
+            for (int g = 0; g < 6; g++) {
+                codec.extractGroup(pixels, 5, g, group);
+                for (int i = 0; i < group.length; i++) {
+                    assertEquals(layout + " group " + g, data[g * group.length + i], group[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void headerUsesOneBitPerPixelWhateverTheLayout() {
+        ByteBuffer buffer = PixelEmbedderTest.randomPixels(new Random(14), 40, ByteOrder.LITTLE_ENDIAN);
+        IntBuffer pixels = PixelCodec.pixels(buffer);
+        int value = LsbLayout.of(3, true).headerValue(123_456);
+        PixelCodec.forBuffer(buffer, LsbLayout.of(3, true)).writeHeader(pixels, value, PixelEmbedder.LENGTH_BITS);
+        assertEquals(value, PixelCodec.forBuffer(buffer).readHeader(pixels, PixelEmbedder.LENGTH_BITS));
+    }
+
+    @Test
+    public void unalignedRangeIsRejected() {
+        PixelCodec codec = PixelCodec.forArgbInts();
+        IntBuffer pixels = IntBuffer.allocate(64);
+        byte[] data = new byte[12];
+        assertThrows(IllegalArgumentException.class, () -> codec.embed(pixels, 0, data, 1, data.length));
+        assertThrows(IllegalArgumentException.class, () -> codec.extract(pixels, 0, data, 2, data.length));
+    }
+
+    @Test
+    public void layoutHeaderRoundTrips() {
+        for (LsbLayout layout : PixelEmbedderTest.allLayouts()) {
+            int header = layout.headerValue(0x0ABCDEF);
+            assertEquals(layout.toString(), LsbLayout.fromHeader(header).toString());
+            assertEquals(0x0ABCDEF, LsbLayout.lengthFromHeader(header));
+            assertEquals(0, (layout.pixelsPerGroup * layout.bitsPerPixel) % 8);
+        }
+        assertThrows(IllegalArgumentException.class, () -> LsbLayout.of(0, false));
+        assertThrows(IllegalArgumentException.class, () -> LsbLayout.of(LsbLayout.MAX_DEPTH + 1, true));
+        assertThrows(IllegalArgumentException.class, () -> LsbLayout.of(2, false).headerValue(1 << 28));
+    }
+}
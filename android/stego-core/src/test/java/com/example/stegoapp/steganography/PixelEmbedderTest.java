@@ -0,0 +1,252 @@
+package com.example.stegoapp.steganography;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class PixelEmbedderTest {
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+    // Payload lengths around group, chunk and inline-threshold boundaries.
+    private static final int[] LENGTHS = {0, 1, 2, 3, 4, 5, 7, 31, 1000, 4097, 20_000};
+
+    @AfterClass
+    public static void shutdownPool() {
+        POOL.shutdownNow();
+    }
+
+    static List<LsbLayout> allLayouts() {
+        List<LsbLayout> layouts = new ArrayList<>();
+        for (int depth = 1; depth <= LsbLayout.MAX_DEPTH; depth++) {
+            layouts.add(LsbLayout.of(depth, false));
+            layouts.add(LsbLayout.of(depth, true));
+        }
+        return layouts;
+    }
+
+    /** An embedder that splits anything over 64 bytes into small parallel chunks. */
+    private static PixelEmbedder parallelEmbedder() {
+        TaskGranularity granularity = new TaskGranularity();
+        granularity.configure(64, 96);
+        return new PixelEmbedder(POOL, granularity);
+    }
+
+    static ByteBuffer randomPixels(Random random, int pixelCount, ByteOrder order) {
+        byte[] bytes = new byte[pixelCount * 4];
+        random.nextBytes(bytes);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length).order(order);
+        buffer.put(bytes).rewind();
+        return buffer;
+    }
+
+    static ByteBuffer copyOf(ByteBuffer buffer) {
+        ByteBuffer copy = ByteBuffer.allocateDirect(buffer.capacity()).order(buffer.order());
+        copy.put(buffer.duplicate().clear()).rewind();
+        return copy;
+    }
+
+    static byte[] bytesOf(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.capacity()];
+        buffer.duplicate().clear().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Bit-at-a-time embed of the documented layout into a little-endian
+     * buffer: payload bit k goes to pixel k / bitsPerPixel, and pixel bit j
+     * to channel j % channels at bit j / channels, where channels 0-3 are
+     * the bytes at offsets 2, 1, 0 and 3.
+     */
+    static void referenceEmbed(ByteBuffer buffer, int startPixel, byte[] data, LsbLayout layout) {
+        int[] offsets = {2, 1, 0, 3};
+        for (int k = 0; k < data.length * 8; k++) {
+            int bit = (data[k / 8] >> (k % 8)) & 1;
+            int j = k % layout.bitsPerPixel;
+            int pos = (startPixel + k / layout.bitsPerPixel) * 4 + offsets[j % layout.channels];
+            int shift = j / layout.channels;
+            buffer.put(pos, (byte) ((buffer.get(pos) & ~(1 << shift)) | bit << shift));
+        }
+    }
+
+    static void referenceHeader(ByteBuffer buffer, int value) {
+        for (int i = 0; i < PixelEmbedder.LENGTH_BITS; i++) {
+            int pos = i * 4 + 2;
+            buffer.put(pos, (byte) ((buffer.get(pos) & 0xFE) | ((value >>> i) & 1)));
+        }
+    }
+
+    @Test
+    public void defaultLayoutMatchesReferenceEmbed() {
+        Random random = new Random(1);
+        PixelEmbedder embedder = parallelEmbedder();
+        for (int length : LENGTHS) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            ByteBuffer pixels = randomPixels(random, PixelEmbedder.LENGTH_BITS + PixelCodec.pixelsFor(length) + 16,
+                    ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer expected = copyOf(pixels);
+
+            embedder.embedPayload(pixels, data);
+            referenceHeader(expected, length);
+            PixelEmbedder.embedDataParallel(expected, data, PixelEmbedder.LENGTH_BITS, 0, length * 8);
+
+            assertArrayEquals("length " + length, bytesOf(expected), bytesOf(pixels));
+        }
+    }
+
+    @Test
+    public void defaultLayoutExtractsWithReference() {
+        Random random = new Random(2);
+        PixelEmbedder embedder = parallelEmbedder();
+        for (int length : LENGTHS) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            ByteBuffer pixels = randomPixels(random, PixelEmbedder.LENGTH_BITS + PixelCodec.pixelsFor(length),
+                    ByteOrder.LITTLE_ENDIAN);
+            embedder.embedPayload(pixels, data);
+
+            byte[] expected = new byte[length];
+            PixelEmbedder.extractDataParallel(pixels, expected, PixelEmbedder.LENGTH_BITS, 0, length * 8);
+            byte[] actual = new byte[length];
+            embedder.extractPayload(pixels, actual, LsbLayout.DEFAULT);
+
+            assertArrayEquals("length " + length, data, expected);
+            assertArrayEquals("length " + length, data, actual);
+        }
+    }
+
+    @Test
+    public void everyLayoutMatchesReferenceEmbed() {
+        Random random = new Random(3);
+        PixelEmbedder embedder = parallelEmbedder();
+        for (LsbLayout layout : allLayouts()) {
+            for (int length : LENGTHS) {
+                byte[] data = new byte[length];
+                random.nextBytes(data);
+                ByteBuffer pixels = randomPixels(random,
+                        PixelEmbedder.LENGTH_BITS + layout.pixelsFor(length) + layout.pixelsPerGroup,
+                        ByteOrder.LITTLE_ENDIAN);
+                ByteBuffer expected = copyOf(pixels);
+
+                embedder.embedPayload(pixels, data, layout);
+                referenceHeader(expected, layout.headerValue(length));
+                referenceEmbed(expected, PixelEmbedder.LENGTH_BITS, data, layout);
+
+                assertArrayEquals(layout + " length " + length, bytesOf(expected), bytesOf(pixels));
+            }
+        }
+    }
+
+    @Test
+    public void everyLayoutRoundTripsInBothByteOrders() {
+        Random random = new Random(4);
+        PixelEmbedder embedder = parallelEmbedder();
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN}) {
+            for (LsbLayout layout : allLayouts()) {
+                for (int length : LENGTHS) {
+                    byte[] data = new byte[length];
+                    random.nextBytes(data);
+                    ByteBuffer pixels = randomPixels(random, PixelEmbedder.LENGTH_BITS + layout.pixelsFor(length), order);
+                    embedder.embedPayload(pixels, data, layout);
+
+                    int header = embedder.readHeader(pixels);
+                    assertEquals(layout.toString(), layout.toString(), LsbLayout.fromHeader(header).toString());
+                    assertEquals(length, LsbLayout.lengthFromHeader(header));
+                    byte[] output = new byte[length];
+                    embedder.extractPayload(pixels, output, LsbLayout.fromHeader(header));
+                    assertArrayEquals(layout + " " + order + " length " + length, data, output);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void legacyHeaderIsAPlainLengthInTheDefaultLayout() {
+        Random random = new Random(5);
+        byte[] data = new byte[777];
+        random.nextBytes(data);
+        ByteBuffer pixels = randomPixels(random, PixelEmbedder.LENGTH_BITS + PixelCodec.pixelsFor(data.length),
+                ByteOrder.LITTLE_ENDIAN);
+        // Written the way carriers were before layouts existed.
+        referenceHeader(pixels, data.length);
+        PixelEmbedder.embedDataParallel(pixels, data, PixelEmbedder.LENGTH_BITS, 0, data.length * 8);
+
+        PixelEmbedder embedder = parallelEmbedder();
+        int header = embedder.readHeader(pixels);
+        assertEquals(data.length, header);
+        assertEquals(LsbLayout.DEFAULT, LsbLayout.fromHeader(header));
+        assertEquals(data.length, LsbLayout.lengthFromHeader(header));
+        byte[] output = new byte[data.length];
+        embedder.extractPayload(pixels, output, LsbLayout.fromHeader(header));
+        assertArrayEquals(data, output);
+    }
+
+    @Test
+    public void embedLeavesPixelsPastThePayloadUntouched() {
+        Random random = new Random(6);
+        PixelEmbedder embedder = parallelEmbedder();
+        for (LsbLayout layout : allLayouts()) {
+            byte[] data = new byte[layout.bytesPerGroup * 5 + 1];
+            random.nextBytes(data);
+            int used = PixelEmbedder.LENGTH_BITS + layout.pixelsFor(data.length);
+            ByteBuffer pixels = randomPixels(random, used + 64, ByteOrder.LITTLE_ENDIAN);
+            byte[] before = bytesOf(pixels);
+            embedder.embedPayload(pixels, data, layout);
+            byte[] after = bytesOf(pixels);
+            for (int i = used * 4; i < after.length; i++) {
+                assertEquals(layout + " byte " + i, before[i], after[i]);
+            }
+        }
+    }
+
+    @Test
+    public void payloadStreamMatchesExtract() throws IOException {
+        Random random = new Random(7);
+        PixelEmbedder embedder = parallelEmbedder();
+        for (LsbLayout layout : allLayouts()) {
+            byte[] data = new byte[PayloadCodec.STREAM_CHUNK_BYTES * 2 + 5];
+            random.nextBytes(data);
+            ByteBuffer pixels = randomPixels(random, PixelEmbedder.LENGTH_BITS + layout.pixelsFor(data.length),
+                    ByteOrder.LITTLE_ENDIAN);
+            embedder.embedPayload(pixels, data, layout);
+
+            ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+            try (InputStream in = embedder.openPayloadStream(pixels, data.length, layout)) {
+                byte[] chunk = new byte[1000];
+                int n;
+                while ((n = in.read(chunk)) != -1) {
+                    streamed.write(chunk, 0, n);
+                }
+            }
+            assertArrayEquals(layout.toString(), data, streamed.toByteArray());
+        }
+    }
+
+    @Test
+    public void capacityFitsTheLargestPayload() {
+        Random random = new Random(8);
+        PixelEmbedder embedder = parallelEmbedder();
+        for (LsbLayout layout : allLayouts()) {
+            int width = 37;
+            int height = 11;
+            byte[] data = new byte[(int) PixelEmbedder.capacity(width, height, layout)];
+            random.nextBytes(data);
+            ByteBuffer pixels = randomPixels(random, width * height, ByteOrder.LITTLE_ENDIAN);
+            embedder.embedPayload(pixels, data, layout);
+            byte[] output = new byte[data.length];
+            embedder.extractPayload(pixels, output, layout);
+            assertArrayEquals(layout.toString(), data, output);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.stegoapp.steganography;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+public class SampleCodecTest {
+
+    @Test
+    public void roundTripsAtAnOffset() {
+        Random random = new Random(21);
+        byte[] sample = new byte[4096];
+        random.nextBytes(sample);
+        byte[] data = new byte[300];
+        random.nextBytes(data);
+        ByteBuffer carrier = ByteBuffer.wrap(sample.clone());
+
+        SampleCodec.embedBytes(carrier, 17, data, 10, 200);
+        byte[] output = new byte[data.length];
+        SampleCodec.extractBytes(carrier, 17, output, 10, 200);
+
+        for (int i = 10; i < 210; i++) {
+            assertEquals("byte " + i, data[i], output[i]);
+        }
+    }
+
+    @Test
+    public void touchesOnlyLowBitsOfItsRange() {
+        Random random = new Random(22);
+        byte[] sample = new byte[1024];
+        random.nextBytes(sample);
+        byte[] data = new byte[50];
+        random.nextBytes(data);
+        ByteBuffer carrier = ByteBuffer.wrap(sample.clone());
+
+        SampleCodec.embedBytes(carrier, 8, data, 0, data.length);
+
+        for (int i = 0; i < sample.length; i++) {
+            boolean inRange = i >= 8 && i < 8 + data.length * 8;
+            int mask = inRange ? 0xFE : 0xFF;
+            assertEquals("byte " + i, sample[i] & mask, carrier.get(i) & mask);
+        }
+        // Bit 0 of payload byte 0 lands in sample byte 8, least significant bit first.
+        assertEquals(data[0] & 1, carrier.get(8) & 1);
+        assertEquals((data[0] >> 7) & 1, carrier.get(15) & 1);
+    }
+
+    @Test
+    public void embedPastTheLimitFailsWithoutWriting() {
+        byte[] sample = new byte[64];
+        ByteBuffer carrier = ByteBuffer.wrap(sample);
+        carrier.limit(40);
+        assertThrows(ArrayIndexOutOfBoundsException.class,
+                () -> SampleCodec.embedBytes(carrier, 0, new byte[]{-1, -1, -1, -1, -1, -1}, 0, 6));
+        assertArrayEquals(new byte[64], sample);
+    }
+
+    @Test
+    public void extractStopsAtTheLimit() {
+        Random random = new Random(23);
+        byte[] data = new byte[8];
+        random.nextBytes(data);
+        ByteBuffer carrier = ByteBuffer.allocate(64);
+        SampleCodec.embedBytes(carrier, 0, data, 0, data.length);
+        carrier.limit(43);
+
+        byte[] output = new byte[8];
+        SampleCodec.extractBytes(carrier, 0, output, 0, 8);
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(data[i], output[i]);
+        }
+        for (int i = 5; i < 8; i++) {
+            assertEquals(0, output[i]);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.stegoapp.steganography;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TiledCarrierTest {
+    private static final ForkJoinPool POOL = new ForkJoinPool(2);
+
+    @AfterClass
+    public static void shutdownPool() {
+        POOL.shutdownNow();
+    }
+
+    /** Row reader over an in-memory ARGB image that checks every decode stays inside it. */
+    private static final class ArrayRowReader implements ArgbRowReader {
+        private final int[] argb;
+        private final int width;
+        private final int height;
+        int decodes;
+
+        ArrayRowReader(int[] argb, int width, int height) {
+            this.argb = argb;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public void decodeArgbRows(int top, int bottom, int[] dst, int offset) {
+            assertTrue("rows " + top + " to " + bottom, 0 <= top && top < bottom && bottom <= height);
+            System.arraycopy(argb, top * width, dst, offset, (bottom - top) * width);
+            decodes++;
+        }
+    }
+
+    private static int[] randomArgb(Random random, int count) {
+        int[] argb = new int[count];
+        for (int i = 0; i < count; i++) {
+            argb[i] = random.nextInt();
+        }
+        return argb;
+    }
+
+    /** The image as a little-endian RGBA buffer, the layout PixelEmbedder works on. */
+    private static ByteBuffer toBuffer(int[] argb) {
+        byte[] rgba = new byte[argb.length * 4];
+        ParallelPngEncoder.argbToRgba(argb, argb.length, rgba);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(rgba.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(rgba).rewind();
+        return buffer;
+    }
+
+    private static int[] toArgb(ByteBuffer buffer) {
+        int[] argb = new int[buffer.capacity() / 4];
+        for (int i = 0; i < argb.length; i++) {
+            int o = i * 4;
+            argb[i] = (buffer.get(o + 3) & 0xFF) << 24 | (buffer.get(o) & 0xFF) << 16
+                    | (buffer.get(o + 1) & 0xFF) << 8 | (buffer.get(o + 2) & 0xFF);
+        }
+        return argb;
+    }
+
+    private static PixelEmbedder embedder() {
+        return new PixelEmbedder(POOL, new TaskGranularity());
+    }
+
+    // Narrow images put the header and single groups across several rows
+    // and tiles; tilePixels is a few rows so payloads cross many tiles.
+    private static final int[][] SHAPES = {
+            // width, height, tilePixels
+            {3, 400, 20},
+            {7, 200, 50},
+            {64, 40, 200},
+            {101, 23, 101 * 4},
+            {33, 33, 1},
+    };
+
+    @Test
+    public void tiledEmbedMatchesWholeBufferEmbed() throws IOException {
+        Random random = new Random(61);
+        for (int[] shape : SHAPES) {
+            int width = shape[0];
+            int height = shape[1];
+            for (LsbLayout layout : PixelEmbedderTest.allLayouts()) {
+                int capacity = (int) PixelEmbedder.capacity(width, height, layout);
+                for (int length : new int[]{0, 1, capacity / 3 + 1, capacity}) {
+                    String label = width + "x" + height + " " + layout + " length " + length;
+                    int[] image = randomArgb(random, width * height);
+                    byte[] data = new byte[length];
+                    random.nextBytes(data);
+
+                    ByteBuffer whole = toBuffer(image);
+                    embedder().embedPayload(whole, data, layout);
+
+                    TiledCarrier tiled = new TiledCarrier(new ArrayRowReader(image.clone(), width, height), shape[2]);
+                    TiledCarrier.EmbedSource source = tiled.embed(data, layout);
+                    int[] rows = new int[width * height];
+                    // Bands of uneven sizes, as the PNG encoder asks for them.
+                    for (int y = 0; y < height; ) {
+                        int count = Math.min(height - y, 1 + random.nextInt(9));
+                        int[] band = new int[count * width];
+                        source.readArgbRows(y, count, band);
+                        System.arraycopy(band, 0, rows, y * width, band.length);
+                        y += count;
+                    }
+                    assertArrayEquals(label, toArgb(whole), rows);
+
+                    // Re-reading an evicted tile must embed it again identically.
+                    int[] first = new int[width];
+                    source.readArgbRows(0, 1, first);
+                    for (int x = 0; x < width; x++) {
+                        assertEquals(label, rows[x], first[x]);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tiledExtractMatchesWholeBufferEmbed() throws IOException {
+        Random random = new Random(62);
+        for (int[] shape : SHAPES) {
+            int width = shape[0];
+            int height = shape[1];
+            for (LsbLayout layout : PixelEmbedderTest.allLayouts()) {
+                int capacity = (int) PixelEmbedder.capacity(width, height, layout);
+                for (int length : new int[]{1, capacity / 2 + 1, capacity}) {
+                    String label = width + "x" + height + " " + layout + " length " + length;
+                    ByteBuffer whole = toBuffer(randomArgb(random, width * height));
+                    byte[] data = new byte[length];
+                    random.nextBytes(data);
+                    embedder().embedPayload(whole, data, layout);
+                    int[] image = toArgb(whole);
+
+                    TiledCarrier tiled = new TiledCarrier(new ArrayRowReader(image, width, height), shape[2]);
+                    int header = tiled.readHeader();
+                    assertEquals(label, embedder().readHeader(whole), header);
+                    assertEquals(label, layout.toString(), LsbLayout.fromHeader(header).toString());
+                    assertEquals(label, length, LsbLayout.lengthFromHeader(header));
+                    assertArrayEquals(label, data, tiled.extract(length, layout, ProgressListener.NONE));
+
+                    byte[] streamed = new byte[length];
+                    try (InputStream in = tiled.openPayloadStream(length, layout, ProgressListener.NONE)) {
+                        int read = 0;
+                        int n;
+                        while ((n = in.read(streamed, read, Math.min(5, length - read))) > 0) {
+                            read += n;
+                        }
+                        assertEquals(label, length, read);
+                        assertEquals(label, -1, in.read());
+                    }
+                    assertArrayEquals(label, data, streamed);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void extractDecodesOnlyPayloadRows() throws IOException {
+        int width = 50;
+        int height = 1000;
+        Random random = new Random(63);
+        ByteBuffer whole = toBuffer(randomArgb(random, width * height));
+        byte[] data = new byte[40];
+        random.nextBytes(data);
+        embedder().embedPayload(whole, data, LsbLayout.DEFAULT);
+        ArrayRowReader reader = new ArrayRowReader(toArgb(whole), width, height);
+
+        TiledCarrier tiled = new TiledCarrier(reader, width * 10);
+        assertArrayEquals(data, tiled.extract(data.length, LsbLayout.DEFAULT, ProgressListener.NONE));
+        // 32 header pixels and 107 payload pixels span 3 rows, all in the first tile.
+        assertEquals(1, reader.decodes);
+    }
+}